@@ -0,0 +1,154 @@
+package com.lwansbrough.RCTCamera;
+
+import android.hardware.Camera;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Drives the torch for {@link RCTCameraModule#RCT_CAMERA_TORCH_MODE_AUTO} from the brightness of
+ * the preview, as a {@link FrameProcessor} sampling a few frames per second.
+ *
+ * The mean luma of each sampled frame is smoothed, and the torch goes on once the scene is dark,
+ * or only dim while the barcode scanner keeps failing to read anything.
+ *
+ * With the torch on, the preview is lit by the torch itself, so its brightness says little about
+ * the ambient light: a close, bright label alone pushes it far up. The torch therefore only goes
+ * off once the preview has stayed close to clipping for a few seconds while the scanner is not
+ * failing, which is taken as the lights having come back. If the scene turns out dark again right
+ * after, that brightness was the torch's own, and the torch stays on until auto mode is turned on
+ * again or the camera restarts. Each state is also held for a while, so the torch does not react
+ * to the exposure jump its own switching causes.
+ */
+class AutoTorchController implements FrameProcessor {
+    private static final String TAG = "RCTCamera";
+
+    // frames per second sampled
+    public static final float FRAME_RATE = 4;
+    // turn on below this mean luma (0-255)
+    private static final int DARK_LUMA = 40;
+    // turn on below this mean luma when the scanner has been failing
+    private static final int DIM_LUMA = 80;
+    // with the torch on, turn off above this mean luma
+    private static final int TORCH_OFF_LUMA = 220;
+    // sampled frames in a row above TORCH_OFF_LUMA before the torch goes off
+    private static final int BRIGHT_STREAK = 12;
+    // a torch turned back on this soon after going off for brightness stays on
+    private static final long REBOUND_MS = 10000;
+    // decoded frames in a row without a barcode that count as failing
+    private static final int FAILURE_STREAK = 15;
+    // time the torch stays in a state before it may switch again
+    private static final long HOLD_MS = 2000;
+    // luma samples per axis
+    private static final int GRID_SIZE = 32;
+    // weight of a new sample in the smoothed luma
+    private static final float SMOOTHING = 0.5f;
+
+    private final BarcodeScanner _barcodeScanner;
+    private Camera _camera;
+    private boolean _torchOn;
+    private float _luma = -1;
+    private long _lastSwitchTime;
+    private int _brightStreak;
+    private long _brightOffTime = -1;
+    // the torch lit the scene it turned off for, keep it on
+    private boolean _isTorchHeld;
+
+    AutoTorchController(BarcodeScanner barcodeScanner) {
+        _barcodeScanner = barcodeScanner;
+    }
+
+    /**
+     * Start driving the torch of the given camera, from whatever state it is in.
+     */
+    public synchronized void attach(Camera camera) {
+        _camera = camera;
+        try {
+            _torchOn = Camera.Parameters.FLASH_MODE_TORCH.equals(camera.getParameters().getFlashMode());
+        } catch (RuntimeException e) {
+            _torchOn = false;
+        }
+        reset();
+    }
+
+    public synchronized void detach() {
+        _camera = null;
+    }
+
+    /**
+     * Forget the brightness measured so far, e.g. when auto mode is turned on again.
+     */
+    public synchronized void reset() {
+        _luma = -1;
+        _lastSwitchTime = SystemClock.elapsedRealtime();
+        _brightStreak = 0;
+        _brightOffTime = -1;
+        _isTorchHeld = false;
+    }
+
+    @Override
+    public synchronized void process(PreviewFrame frame) {
+        if (_camera == null) {
+            return;
+        }
+        float luma = getMeanLuma(frame);
+        _luma = _luma < 0 ? luma : _luma + SMOOTHING * (luma - _luma);
+
+        long now = SystemClock.elapsedRealtime();
+        if (now - _lastSwitchTime < HOLD_MS) {
+            return;
+        }
+        boolean failing = _barcodeScanner.getFailureStreak() >= FAILURE_STREAK;
+        boolean on;
+        if (_torchOn) {
+            _brightStreak = _luma > TORCH_OFF_LUMA ? _brightStreak + 1 : 0;
+            on = _isTorchHeld || _brightStreak < BRIGHT_STREAK || failing;
+        } else {
+            on = _luma < DARK_LUMA || (failing && _luma < DIM_LUMA);
+        }
+        if (on != _torchOn && setTorch(on)) {
+            if (on) {
+                _isTorchHeld = _brightOffTime >= 0 && now - _brightOffTime < REBOUND_MS;
+            } else {
+                _brightOffTime = now;
+            }
+            _torchOn = on;
+            _lastSwitchTime = now;
+            _brightStreak = 0;
+            // the exposure has to settle again, start over
+            _luma = -1;
+        }
+    }
+
+    private boolean setTorch(boolean on) {
+        String mode = on ? Camera.Parameters.FLASH_MODE_TORCH : Camera.Parameters.FLASH_MODE_OFF;
+        try {
+            Camera.Parameters parameters = _camera.getParameters();
+            List<String> flashModes = parameters.getSupportedFlashModes();
+            if (flashModes == null || !flashModes.contains(mode)) {
+                return false;
+            }
+            parameters.setFlashMode(mode);
+            _camera.setParameters(parameters);
+            return true;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "failed to switch torch", e);
+            return false;
+        }
+    }
+
+    private static float getMeanLuma(PreviewFrame frame) {
+        byte[] data = frame.data;
+        int width = frame.width;
+        int height = frame.height;
+        long sum = 0;
+        for (int gridY = 0; gridY < GRID_SIZE; gridY++) {
+            int rowOffset = ((2 * gridY + 1) * height / (2 * GRID_SIZE)) * width;
+            for (int gridX = 0; gridX < GRID_SIZE; gridX++) {
+                sum += data[rowOffset + (2 * gridX + 1) * width / (2 * GRID_SIZE)] & 0xff;
+            }
+        }
+        return (float) sum / (GRID_SIZE * GRID_SIZE);
+    }
+}
@@ -0,0 +1,135 @@
+package com.lwansbrough.RCTCamera;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remembers recently decoded barcodes, keyed by format and text, and decides which reads are
+ * worth reporting to JS.
+ *
+ * A barcode's "visit" lasts until it has not been seen for the TTL. Within a visit it is reported
+ * once, as soon as it has been read minRepeat times, and never sooner than the cooldown after it
+ * was last reported. A TTL of 0 disables de-duplication: a visit then ends once the barcode has not
+ * been seen for REPEAT_WINDOW_MS, and every read of it that passes minRepeat and the cooldown is
+ * reported.
+ */
+class BarcodeResultCache {
+    // prune stale entries once the cache grows past this many codes
+    private static final int PRUNE_SIZE = 64;
+    // how long a visit lasts without a TTL, and how long any entry is kept at least
+    private static final long REPEAT_WINDOW_MS = 1000;
+
+    private long _ttlMs = 0;
+    private int _minRepeat = 1;
+    private long _cooldownMs = 0;
+    private final Map<Key, Entry> _entries = new HashMap<>();
+
+    public synchronized void setPolicy(long ttlMs, int minRepeat, long cooldownMs) {
+        _ttlMs = Math.max(0, ttlMs);
+        _minRepeat = Math.max(1, minRepeat);
+        _cooldownMs = Math.max(0, cooldownMs);
+    }
+
+    public synchronized void clear() {
+        _entries.clear();
+    }
+
+    /**
+     * Record a read and return whether it should be emitted.
+     */
+    public synchronized boolean onRead(BarcodeFormat format, String text, long now) {
+        Key key = new Key(format, text);
+        Entry entry = _entries.get(key);
+        if (entry == null) {
+            if (_entries.size() >= PRUNE_SIZE) {
+                prune(now);
+            }
+            entry = new Entry();
+            _entries.put(key, entry);
+        } else if (now - entry.lastSeen > getVisitTimeout()) {
+            // the code went away for long enough, this is a new visit
+            entry.count = 0;
+            entry.emitted = false;
+        }
+
+        entry.count++;
+        entry.lastSeen = now;
+
+        if (_ttlMs > 0 && entry.emitted) {
+            return false;
+        }
+        if (entry.count < _minRepeat) {
+            return false;
+        }
+        if (entry.lastEmitted != 0 && now - entry.lastEmitted < _cooldownMs) {
+            return false;
+        }
+        entry.emitted = true;
+        entry.lastEmitted = now;
+        return true;
+    }
+
+    private long getVisitTimeout() {
+        return _ttlMs > 0 ? _ttlMs : REPEAT_WINDOW_MS;
+    }
+
+    /**
+     * Drop the entries that no longer affect what is reported, or if there are none, the least
+     * recently seen one.
+     */
+    private void prune(long now) {
+        long maxAge = Math.max(getVisitTimeout(), _cooldownMs);
+        Iterator<Entry> iterator = _entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastSeen > maxAge) {
+                iterator.remove();
+            }
+        }
+        if (_entries.size() < PRUNE_SIZE) {
+            return;
+        }
+        Key leastRecentlySeen = null;
+        long lastSeen = Long.MAX_VALUE;
+        for (Map.Entry<Key, Entry> entry : _entries.entrySet()) {
+            if (entry.getValue().lastSeen < lastSeen) {
+                lastSeen = entry.getValue().lastSeen;
+                leastRecentlySeen = entry.getKey();
+            }
+        }
+        _entries.remove(leastRecentlySeen);
+    }
+
+    private static class Entry {
+        int count;
+        long lastSeen;
+        long lastEmitted;
+        boolean emitted;
+    }
+
+    private static class Key {
+        private final BarcodeFormat _format;
+        private final String _text;
+
+        Key(BarcodeFormat format, String text) {
+            _format = format;
+            _text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return _format == other._format && _text.equals(other._text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * _format.hashCode() + _text.hashCode();
+        }
+    }
+}
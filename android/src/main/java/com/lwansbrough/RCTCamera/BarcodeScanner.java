@@ -0,0 +1,565 @@
+package com.lwansbrough.RCTCamera;
+
+import android.graphics.RectF;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.facebook.react.uimanager.PixelUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Decodes barcodes from preview frames on dedicated worker threads.
+ *
+ * Frames are handed over through a {@link FrameMailbox}, so while decodes are in progress only the
+ * most recent preview is kept around and older ones go straight back to the camera. By default a
+ * single worker decodes one frame at a time; with a larger pool several consecutive frames are
+ * decoded in parallel, each worker using its own reader, and results are put back in frame order
+ * by a {@link DecodeResultSequencer}.
+ *
+ * With tracking enabled, the region a barcode was last found in, moved along with it and padded,
+ * is decoded first, and the whole frame only if the code is not found there.
+ */
+class BarcodeScanner implements DecodeResultSequencer.Listener {
+    private static final String TAG = "RCTCamera";
+
+    private final ScanRateGovernor _governor;
+    // filters repeated reads of the same code before they reach the bridge
+    private final BarcodeResultCache _resultCache = new BarcodeResultCache();
+    private final DecodeStrategyLadder _ladder = new DecodeStrategyLadder();
+    private final BarcodeTracker _tracker = new BarcodeTracker();
+    private final FormatPriorities _formatPriorities = new FormatPriorities();
+    private int _poolSize = 1;
+    // replaced, never modified, so workers can tell when to rebuild their readers
+    private volatile Set<BarcodeFormat> _formats;
+    private volatile boolean _multiDecode = false;
+    private volatile int _decodeBudgetMs = 0;
+    private volatile boolean _tracking = false;
+    private volatile int _scanlines = 0;
+    private volatile boolean _racing = false;
+    private volatile boolean _formatLearning = false;
+    // frames decoded in a row without finding a barcode
+    private final AtomicInteger _failureStreak = new AtomicInteger();
+    // System.nanoTime() when scanning began, until the first barcode is reported; 0 after that
+    private volatile long _sessionStartNanos = 0;
+    private boolean _persistFormatLearning = false;
+
+    private FrameMailbox _mailbox;
+
+    public BarcodeScanner(List<String> barCodeTypes, ScanRateGovernor governor) {
+        _governor = governor;
+        setBarCodeTypes(barCodeTypes);
+    }
+
+    public synchronized void start() {
+        if (_mailbox != null) {
+            return;
+        }
+        _mailbox = new FrameMailbox();
+        DecodeResultSequencer sequencer = new DecodeResultSequencer(_poolSize, this);
+        for (int i = 0; i < _poolSize; i++) {
+            new DecodeThread(this, _mailbox, sequencer, _governor, _ladder, _tracker, new FrameDecoder()).start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (_mailbox != null) {
+            // workers exit once they see the closed mailbox
+            _mailbox.close();
+            _mailbox = null;
+        }
+        _tracker.reset();
+        saveFormatPriorities();
+    }
+
+    /**
+     * Number of frames decoded in parallel. Restarts the workers if they are running.
+     */
+    public synchronized void setPoolSize(int poolSize) {
+        poolSize = Math.max(1, poolSize);
+        if (poolSize == _poolSize) {
+            return;
+        }
+        _poolSize = poolSize;
+        if (_mailbox != null) {
+            stop();
+            start();
+        }
+    }
+
+    public synchronized int getPoolSize() {
+        return _poolSize;
+    }
+
+    /**
+     * Barcode types to look for, all of them if null or empty. Workers pick the new types up
+     * with their next frame.
+     */
+    public void setBarCodeTypes(List<String> barCodeTypes) {
+        EnumSet<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
+
+        if (barCodeTypes != null) {
+            for (String code : barCodeTypes) {
+                BarcodeFormat format = parseBarCodeString(code);
+                if (format != null) {
+                    decodeFormats.add(format);
+                }
+            }
+        }
+
+        _formats = Collections.unmodifiableSet(decodeFormats);
+    }
+
+    public Set<BarcodeFormat> getFormats() {
+        return _formats;
+    }
+
+    /**
+     * Report every barcode found in a frame, as one batched event, instead of only the first.
+     */
+    public void setMultiDecode(boolean multiDecode) {
+        _multiDecode = multiDecode;
+    }
+
+    public boolean isMultiDecode() {
+        return _multiDecode;
+    }
+
+    public void setResultPolicy(long ttlMs, int minRepeat, long cooldownMs) {
+        _resultCache.setPolicy(ttlMs, minRepeat, cooldownMs);
+    }
+
+    /**
+     * Longest a single frame may be decoded for. Decodes that take longer are abandoned, so one
+     * hard frame can't hold up the newer frames behind it. 0 for no limit.
+     */
+    public void setDecodeBudget(int decodeBudgetMs) {
+        _decodeBudgetMs = Math.max(0, decodeBudgetMs);
+    }
+
+    public int getDecodeBudget() {
+        return _decodeBudgetMs;
+    }
+
+    /**
+     * Number of rows to decode in 1D scanline mode, 0 to decode whole frames.
+     */
+    public void setScanlines(int scanlines) {
+        _scanlines = scanlines;
+    }
+
+    public int getScanlines() {
+        return _scanlines;
+    }
+
+    /**
+     * Race the 1D readers against the 2D readers on two threads, when both kinds of formats are
+     * looked for.
+     */
+    public void setRacing(boolean racing) {
+        _racing = racing;
+    }
+
+    public boolean isRacing() {
+        return _racing;
+    }
+
+    /**
+     * Look for a single barcode where it was last seen before searching the whole frame. Has no
+     * effect while decoding multiple barcodes per frame.
+     */
+    public void setTracking(boolean tracking) {
+        _tracking = tracking;
+        if (!tracking) {
+            _tracker.reset();
+        }
+    }
+
+    public boolean isTracking() {
+        return _tracking;
+    }
+
+    /**
+     * Try the readers for the formats read most recently first.
+     *
+     * @param persist keep what was learned across sessions, in the app's shared preferences.
+     */
+    public synchronized void setFormatLearning(boolean learning, boolean persist) {
+        if (persist && !_persistFormatLearning) {
+            ReactContext reactContext = RCTCameraModule.getReactContextSingleton();
+            if (reactContext != null) {
+                _formatPriorities.load(reactContext);
+            }
+        }
+        _formatLearning = learning;
+        _persistFormatLearning = persist;
+    }
+
+    public FormatPriorities getFormatPriorities() {
+        return _formatLearning ? _formatPriorities : null;
+    }
+
+    private void saveFormatPriorities() {
+        if (!_persistFormatLearning) {
+            return;
+        }
+        ReactContext reactContext = RCTCameraModule.getReactContextSingleton();
+        if (reactContext != null) {
+            _formatPriorities.save(reactContext);
+        }
+    }
+
+    /**
+     * @see DecodeStrategyLadder#setEscalationFrames(int)
+     */
+    public void setEscalationFrames(int escalationFrames) {
+        _ladder.setEscalationFrames(escalationFrames);
+    }
+
+    /**
+     * @see DecodeStrategyLadder#isEscalating()
+     */
+    public boolean isEscalating() {
+        return _ladder.isEscalating();
+    }
+
+    /**
+     * Number of frames decoded in a row without finding a barcode.
+     */
+    public int getFailureStreak() {
+        return _failureStreak.get();
+    }
+
+    /**
+     * Mark the start of a scan, from which the time to the first barcode reported is measured.
+     */
+    public void beginSession() {
+        _sessionStartNanos = System.nanoTime();
+        _failureStreak.set(0);
+    }
+
+    private void onFrameDecoded(boolean success) {
+        if (success) {
+            _failureStreak.set(0);
+        } else {
+            _failureStreak.incrementAndGet();
+        }
+    }
+
+    /**
+     * Queue a frame for decoding, replacing any frame that is still waiting. Ownership of the
+     * frame passes to the scanner.
+     */
+    public synchronized void post(PreviewFrame frame) {
+        if (_mailbox == null) {
+            frame.release();
+            return;
+        }
+        _mailbox.post(frame);
+    }
+
+    /**
+     * Parse barcodes as BarcodeFormat constants.
+     *
+     * Supports all iOS codes except [code39mod43, itf14]
+     *
+     * Additionally supports [codabar, maxicode, rss14, rssexpanded, upca, upceanextension]
+     */
+    private BarcodeFormat parseBarCodeString(String c) {
+        if ("aztec".equals(c)) {
+            return BarcodeFormat.AZTEC;
+        } else if ("ean13".equals(c)) {
+            return BarcodeFormat.EAN_13;
+        } else if ("ean8".equals(c)) {
+            return BarcodeFormat.EAN_8;
+        } else if ("qr".equals(c)) {
+            return BarcodeFormat.QR_CODE;
+        } else if ("pdf417".equals(c)) {
+            return BarcodeFormat.PDF_417;
+        } else if ("upce".equals(c)) {
+            return BarcodeFormat.UPC_E;
+        } else if ("datamatrix".equals(c)) {
+            return BarcodeFormat.DATA_MATRIX;
+        } else if ("code39".equals(c)) {
+            return BarcodeFormat.CODE_39;
+        } else if ("code93".equals(c)) {
+            return BarcodeFormat.CODE_93;
+        } else if ("interleaved2of5".equals(c)) {
+            return BarcodeFormat.ITF;
+        } else if ("codabar".equals(c)) {
+            return BarcodeFormat.CODABAR;
+        } else if ("code128".equals(c)) {
+            return BarcodeFormat.CODE_128;
+        } else if ("maxicode".equals(c)) {
+            return BarcodeFormat.MAXICODE;
+        } else if ("rss14".equals(c)) {
+            return BarcodeFormat.RSS_14;
+        } else if ("rssexpanded".equals(c)) {
+            return BarcodeFormat.RSS_EXPANDED;
+        } else if ("upca".equals(c)) {
+            return BarcodeFormat.UPC_A;
+        } else if ("upceanextension".equals(c)) {
+            return BarcodeFormat.UPC_EAN_EXTENSION;
+        } else {
+            android.util.Log.v("RCTCamera", "Unsupported code.. [" + c + "]");
+            return null;
+        }
+    }
+
+    /**
+     * Called in frame order by the sequencer. Only reads the result cache lets through are sent
+     * to JS.
+     */
+    @Override
+    public void onResults(Result[] results) {
+        List<Result> reported = new ArrayList<>(results.length);
+        long now = SystemClock.elapsedRealtime();
+        for (Result result : results) {
+            if (_resultCache.onRead(result.getBarcodeFormat(), result.getText(), now)) {
+                reported.add(result);
+            }
+        }
+        if (reported.isEmpty()) {
+            return;
+        }
+        long sessionStart = _sessionStartNanos;
+        if (sessionStart != 0) {
+            _sessionStartNanos = 0;
+            ScannerStats.getInstance().onFirstScan(System.nanoTime() - sessionStart);
+        }
+
+        ReactContext reactContext = RCTCameraModule.getReactContextSingleton();
+        if (reactContext == null) {
+            return;
+        }
+        DeviceEventManagerModule.RCTDeviceEventEmitter emitter = reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
+        if (_multiDecode) {
+            WritableArray barcodes = Arguments.createArray();
+            for (Result result : reported) {
+                WritableMap barcode = createBarcodeMap(result);
+                barcode.putArray("points", createPointsArray(result.getResultPoints()));
+                barcodes.pushMap(barcode);
+            }
+            WritableMap event = Arguments.createMap();
+            event.putArray("barcodes", barcodes);
+            emitter.emit("CameraBarCodesReadAndroid", event);
+        }
+        // onBarCodeRead keeps firing for each barcode alongside onBarCodesRead
+        for (Result result : reported) {
+            emitter.emit("CameraBarCodeReadAndroid", createBarcodeMap(result));
+        }
+    }
+
+    private static WritableMap createBarcodeMap(Result result) {
+        WritableMap barcode = Arguments.createMap();
+        barcode.putString("data", result.getText());
+        barcode.putString("type", result.getBarcodeFormat().toString());
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        Object viewBounds = metadata != null ? metadata.get(ResultMetadataType.OTHER) : null;
+        if (viewBounds instanceof RectF) {
+            barcode.putMap("bounds", createBoundsMap((RectF) viewBounds));
+        }
+        return barcode;
+    }
+
+    /**
+     * Same shape as the bounds reported on iOS, in layout units.
+     */
+    private static WritableMap createBoundsMap(RectF viewBounds) {
+        WritableMap origin = Arguments.createMap();
+        origin.putDouble("x", PixelUtil.toDIPFromPixel(viewBounds.left));
+        origin.putDouble("y", PixelUtil.toDIPFromPixel(viewBounds.top));
+        WritableMap size = Arguments.createMap();
+        size.putDouble("width", PixelUtil.toDIPFromPixel(viewBounds.width()));
+        size.putDouble("height", PixelUtil.toDIPFromPixel(viewBounds.height()));
+        WritableMap bounds = Arguments.createMap();
+        bounds.putMap("origin", origin);
+        bounds.putMap("size", size);
+        return bounds;
+    }
+
+    /**
+     * In layout units, like the bounds.
+     */
+    private static WritableArray createPointsArray(ResultPoint[] resultPoints) {
+        WritableArray points = Arguments.createArray();
+        if (resultPoints == null) {
+            return points;
+        }
+        for (ResultPoint resultPoint : resultPoints) {
+            if (resultPoint == null) {
+                continue;
+            }
+            WritableMap point = Arguments.createMap();
+            point.putDouble("x", PixelUtil.toDIPFromPixel(resultPoint.getX()));
+            point.putDouble("y", PixelUtil.toDIPFromPixel(resultPoint.getY()));
+            points.pushMap(point);
+        }
+        return points;
+    }
+
+    private static class DecodeThread extends Thread {
+        private final BarcodeScanner _scanner;
+        private final FrameMailbox _mailbox;
+        private final DecodeResultSequencer _sequencer;
+        private final ScanRateGovernor _governor;
+        private final DecodeStrategyLadder _ladder;
+        private final BarcodeTracker _tracker;
+        // readers owned by this worker, never shared with other threads
+        private final FrameDecoder _decoder;
+        private int _priority = Integer.MIN_VALUE;
+
+        DecodeThread(BarcodeScanner scanner, FrameMailbox mailbox, DecodeResultSequencer sequencer, ScanRateGovernor governor, DecodeStrategyLadder ladder, BarcodeTracker tracker, FrameDecoder decoder) {
+            super("RCTCameraBarcodeScanner");
+            _scanner = scanner;
+            _mailbox = mailbox;
+            _sequencer = sequencer;
+            _governor = governor;
+            _ladder = ladder;
+            _tracker = tracker;
+            _decoder = decoder;
+        }
+
+        @Override
+        public void run() {
+            try {
+                PreviewFrame frame;
+                while ((frame = _mailbox.take()) != null) {
+                    applyThreadPriority();
+                    Result[] results = null;
+                    long startTime = SystemClock.elapsedRealtime();
+                    long startNanos = System.nanoTime();
+                    int budget = _scanner.getDecodeBudget();
+                    try {
+                        boolean multiple = _scanner.isMultiDecode();
+                        _decoder.setFormats(_scanner.getFormats());
+                        _decoder.setMultiple(multiple);
+                        _decoder.setScanlines(_scanner.getScanlines());
+                        _decoder.setRacing(_scanner.isRacing());
+                        _decoder.setPriorities(_scanner.getFormatPriorities());
+                        _decoder.setDeadline(budget > 0 ? startTime + budget : 0);
+                        results = decode(frame, startTime, _scanner.isTracking() && !multiple);
+                    } catch (DecodeTimeoutException e) {
+                        ScannerStats.getInstance().onDecodeTimeout();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "barcode decode failed", e);
+                    } finally {
+                        _governor.onDecodeFinished(SystemClock.elapsedRealtime() - startTime, results != null);
+                        _ladder.onFrameDecoded(results != null);
+                        _scanner.onFrameDecoded(results != null);
+                        learnFormats(results);
+                        ScannerStats.getInstance().onFrameDecoded(System.nanoTime() - startNanos, results);
+                        frame.release();
+                        _sequencer.complete(frame.sequence, results);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            } finally {
+                _decoder.release();
+            }
+        }
+
+        private void learnFormats(Result[] results) {
+            FormatPriorities priorities = _scanner.getFormatPriorities();
+            if (priorities == null || results == null) {
+                return;
+            }
+            for (Result result : results) {
+                priorities.onDecoded(result.getBarcodeFormat());
+            }
+        }
+
+        private Result[] decode(PreviewFrame frame, long time, boolean tracking) {
+            int firstStep = _ladder.getFirstStep();
+            int lastStep = _ladder.getLastStep();
+            Result[] results = null;
+            if (tracking) {
+                RectF predicted = _tracker.predict(time);
+                if (predicted != null && (frame.scanArea == null || predicted.intersect(frame.scanArea))) {
+                    results = _decoder.decode(frame, predicted, firstStep, lastStep);
+                }
+            }
+            if (results == null) {
+                results = _decoder.decode(frame, frame.scanArea, firstStep, lastStep);
+            }
+            if (results == null) {
+                return null;
+            }
+
+            int frameWidth = frame.getUprightWidth();
+            int frameHeight = frame.getUprightHeight();
+            if (tracking) {
+                RectF bounds = BarcodeTracker.getNormalizedBounds(results[0], frameWidth, frameHeight);
+                if (bounds != null) {
+                    _tracker.onFound(bounds, time);
+                }
+            }
+            // bounds and points are reported in view pixels, whatever the resolution the frame was
+            // decoded at, and left out when the viewfinder's layout is unknown
+            for (Result result : results) {
+                if (frame.viewFinderGeometry != null) {
+                    // carried along to the event in the result's application specific metadata
+                    RectF bounds = BarcodeTracker.getNormalizedBounds(result, frameWidth, frameHeight);
+                    if (bounds != null) {
+                        result.putMetadata(ResultMetadataType.OTHER, frame.viewFinderGeometry.toViewRect(bounds));
+                    }
+                }
+                toViewPoints(result, frame.viewFinderGeometry, frameWidth, frameHeight);
+            }
+            return results;
+        }
+
+        /**
+         * Map the result points from pixels of the upright frame to pixels of the camera view.
+         */
+        private static void toViewPoints(Result result, ViewFinderGeometry geometry, int frameWidth, int frameHeight) {
+            ResultPoint[] points = result.getResultPoints();
+            if (points == null) {
+                return;
+            }
+            for (int i = 0; i < points.length; i++) {
+                if (points[i] == null) {
+                    continue;
+                }
+                if (geometry == null) {
+                    points[i] = null;
+                    continue;
+                }
+                float x = points[i].getX() / frameWidth;
+                float y = points[i].getY() / frameHeight;
+                RectF viewPoint = geometry.toViewRect(new RectF(x, y, x, y));
+                points[i] = new ResultPoint(viewPoint.left, viewPoint.top);
+            }
+        }
+
+        private void applyThreadPriority() {
+            int priority = RCTCamera.getInstance().getBarcodeScannerThreadPriority();
+            if (priority != _priority) {
+                _priority = priority;
+                try {
+                    Process.setThreadPriority(priority);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "failed to set barcode scanner thread priority " + priority, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.lwansbrough.RCTCamera;
+
+import android.graphics.RectF;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Remembers where the last barcode was found, and how fast it was moving, to predict where to look
+ * for it in the next frame.
+ *
+ * Boxes are normalized to [0, 1] over the upright preview frame. The predicted region is the last
+ * box moved along its velocity and padded on every side, since result points only outline part of
+ * a code (a 1D code is found on a single row) and the code may speed up or turn. A track is given
+ * up once the code has not been found for MAX_AGE_MS.
+ *
+ * Shared by all decode workers.
+ */
+class BarcodeTracker {
+    private static final long MAX_AGE_MS = 500;
+    // padding on each side, as a share of the box size
+    private static final float PADDING = 0.5f;
+    // smallest predicted region, as a share of the frame size
+    private static final float MIN_REGION_SIZE = 0.25f;
+    // weight of the newest velocity sample
+    private static final float SMOOTHING = 0.5f;
+
+    private RectF _box;
+    private long _time;
+    // in frames per millisecond
+    private float _velocityX;
+    private float _velocityY;
+
+    public synchronized void reset() {
+        _box = null;
+    }
+
+    /**
+     * The region of a frame captured at the given time to decode first, or null if nothing is
+     * being tracked.
+     */
+    public synchronized RectF predict(long now) {
+        if (_box == null || now - _time > MAX_AGE_MS) {
+            return null;
+        }
+        long elapsed = Math.max(0, now - _time);
+        float centerX = _box.centerX() + _velocityX * elapsed;
+        float centerY = _box.centerY() + _velocityY * elapsed;
+        float halfWidth = Math.max(_box.width() * (0.5f + PADDING), MIN_REGION_SIZE / 2);
+        float halfHeight = Math.max(_box.height() * (0.5f + PADDING), MIN_REGION_SIZE / 2);
+        RectF region = new RectF(centerX - halfWidth, centerY - halfHeight, centerX + halfWidth, centerY + halfHeight);
+        if (!region.intersect(0, 0, 1, 1)) {
+            return null;
+        }
+        return region;
+    }
+
+    public synchronized void onFound(RectF box, long time) {
+        if (_box != null && time > _time && time - _time <= MAX_AGE_MS) {
+            float elapsed = time - _time;
+            _velocityX += SMOOTHING * ((box.centerX() - _box.centerX()) / elapsed - _velocityX);
+            _velocityY += SMOOTHING * ((box.centerY() - _box.centerY()) / elapsed - _velocityY);
+        } else {
+            _velocityX = 0;
+            _velocityY = 0;
+        }
+        _box = box;
+        _time = time;
+    }
+
+    /**
+     * The bounding box of a result's points, normalized over an upright frame of the given size,
+     * or null if the result has no points.
+     */
+    public static RectF getNormalizedBounds(Result result, int frameWidth, int frameHeight) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null) {
+            return null;
+        }
+        RectF bounds = null;
+        for (ResultPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            float x = point.getX() / frameWidth;
+            float y = point.getY() / frameHeight;
+            if (bounds == null) {
+                bounds = new RectF(x, y, x, y);
+            } else {
+                bounds.union(x, y);
+            }
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,20 @@
+package com.lwansbrough.RCTCamera;
+
+/**
+ * Thrown from inside a ZXing decode that is no longer wanted, to abandon it at the next
+ * checkpoint, see {@link DecodeToken}. Unchecked, so it passes through the readers, which only
+ * catch ReaderException.
+ */
+class DecodeCancelledException extends RuntimeException {
+    static final DecodeCancelledException INSTANCE = new DecodeCancelledException("barcode decode was cancelled");
+
+    protected DecodeCancelledException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // thrown often and never logged, don't pay for a stack trace
+        return this;
+    }
+}
@@ -0,0 +1,176 @@
+package com.lwansbrough.RCTCamera;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The readers to run over a frame, built once for the configured barcode formats.
+ *
+ * MultiFormatReader picks its readers from the hints on every decode and runs the detector of
+ * every format it was not told to skip. A plan only holds the readers for the formats that were
+ * asked for, e.g. a bare QRCodeReader for "qr", or a single {@link OneDReaderGroup} covering every
+ * requested 1D format, and tries them in the same order MultiFormatReader would. An empty set of
+ * formats means all of them, as it does for MultiFormatReader.
+ *
+ * The order can be changed to follow the formats actually being scanned, see
+ * {@link #prioritize(FormatPriorities)}.
+ *
+ * The decode token, if set, is checked before each reader is tried, since the 2D readers work on
+ * an already binarized matrix and won't read from the luminance source again.
+ *
+ * Like the readers it holds, a plan is not thread safe.
+ */
+class DecodePlan implements Reader {
+    private final Map<DecodeHintType, ?> _hints;
+    private final ReaderSlot<?>[] _slots;
+    private final OneDReaderGroup _oneDReaders;
+    private DecodeToken _token;
+    private int _prioritiesVersion = -1;
+
+    /**
+     * @param hints must list the formats as {@link DecodeHintType#POSSIBLE_FORMATS}.
+     */
+    DecodePlan(Set<BarcodeFormat> formats, Map<DecodeHintType, ?> hints) {
+        _hints = hints;
+        boolean all = formats.isEmpty();
+        List<ReaderSlot<?>> slots = new ArrayList<>();
+        // cheap 1D row scans go first, the 2D detectors are much more expensive
+        if (OneDReaderGroup.isNeededFor(formats)) {
+            _oneDReaders = new OneDReaderGroup(formats, hints);
+            slots.add(new ReaderSlot<>(_oneDReaders, _oneDReaders.getFormats(), slots.size()));
+        } else {
+            _oneDReaders = null;
+        }
+        if (all || formats.contains(BarcodeFormat.QR_CODE)) {
+            slots.add(new ReaderSlot<>(new QRCodeReader(), EnumSet.of(BarcodeFormat.QR_CODE), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.DATA_MATRIX)) {
+            slots.add(new ReaderSlot<>(new DataMatrixReader(), EnumSet.of(BarcodeFormat.DATA_MATRIX), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.AZTEC)) {
+            slots.add(new ReaderSlot<>(new AztecReader(), EnumSet.of(BarcodeFormat.AZTEC), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.PDF_417)) {
+            slots.add(new ReaderSlot<>(new PDF417Reader(), EnumSet.of(BarcodeFormat.PDF_417), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.MAXICODE)) {
+            slots.add(new ReaderSlot<>(new MaxiCodeReader(), EnumSet.of(BarcodeFormat.MAXICODE), slots.size()));
+        }
+        _slots = slots.toArray(new ReaderSlot<?>[slots.size()]);
+    }
+
+    /**
+     * Order the readers, and the 1D readers among themselves, by how often their formats have been
+     * read recently. Cheap to call for every frame, sorting only happens when the priorities have
+     * changed.
+     */
+    public void prioritize(FormatPriorities priorities) {
+        int version = priorities.getVersion();
+        if (version == _prioritiesVersion) {
+            return;
+        }
+        _prioritiesVersion = version;
+        priorities.sort(_slots);
+        if (_oneDReaders != null) {
+            _oneDReaders.prioritize(priorities);
+        }
+    }
+
+    /**
+     * @param token checked before each reader, null for none.
+     */
+    public void setToken(DecodeToken token) {
+        _token = token;
+    }
+
+    /**
+     * The 1D readers of this plan, or null if it has none.
+     */
+    public OneDReaderGroup getOneDReaders() {
+        return _oneDReaders;
+    }
+
+    /**
+     * Whether this plan only looks for 1D formats.
+     */
+    public boolean isOneDOnly() {
+        return _oneDReaders != null && _slots.length == 1;
+    }
+
+    /**
+     * Whether this plan looks for both 1D and 2D formats.
+     */
+    public boolean hasOneDAndTwoD() {
+        return _oneDReaders != null && _slots.length > 1;
+    }
+
+    /**
+     * Run only the 2D readers of this plan, checking the given token rather than the plan's. The
+     * 1D group is left alone, so it can be used on another thread at the same time.
+     */
+    public Result decodeTwoD(BinaryBitmap image, Map<DecodeHintType, ?> hints, DecodeToken token) throws NotFoundException {
+        for (ReaderSlot<?> slot : _slots) {
+            if (slot.reader == _oneDReaders) {
+                continue;
+            }
+            token.check();
+            try {
+                return slot.reader.decode(image, hints);
+            } catch (ReaderException e) {
+                // try the next format
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    public void resetTwoD() {
+        for (ReaderSlot<?> slot : _slots) {
+            if (slot.reader != _oneDReaders) {
+                slot.reader.reset();
+            }
+        }
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+        return decode(image, _hints);
+    }
+
+    @Override
+    public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+        for (ReaderSlot<?> slot : _slots) {
+            if (_token != null) {
+                _token.check();
+            }
+            try {
+                return slot.reader.decode(image, hints);
+            } catch (ReaderException e) {
+                // try the next format
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    @Override
+    public void reset() {
+        for (ReaderSlot<?> slot : _slots) {
+            slot.reader.reset();
+        }
+    }
+}
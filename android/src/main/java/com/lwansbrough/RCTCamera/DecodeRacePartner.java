@@ -0,0 +1,123 @@
+package com.lwansbrough.RCTCamera;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.google.zxing.Result;
+
+/**
+ * Helper thread of a decode worker, running one side of a race between two reader groups while
+ * the worker runs the other, see {@link FrameDecoder}. Runs one job at a time.
+ */
+class DecodeRacePartner extends Thread {
+    private static final String TAG = "RCTCamera";
+
+    interface Job {
+        /**
+         * @return the barcode found, or null if there is none.
+         * @throws DecodeTimeoutException if the job ran out of time.
+         */
+        Result run();
+    }
+
+    private Job _job;
+    private Result _result;
+    private boolean _timedOut = false;
+    private boolean _busy = false;
+    private boolean _shutdown = false;
+
+    DecodeRacePartner() {
+        super("RCTCameraBarcodeRacePartner");
+        setDaemon(true);
+    }
+
+    /**
+     * Start a job, once the previous one has finished.
+     */
+    public synchronized void submit(Job job) {
+        awaitIdle();
+        _job = job;
+        _result = null;
+        _timedOut = false;
+        _busy = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait for the current job to finish and return its result.
+     *
+     * @throws DecodeTimeoutException if the job ran out of time.
+     */
+    public synchronized Result awaitResult() {
+        awaitIdle();
+        if (_timedOut) {
+            throw DecodeTimeoutException.INSTANCE;
+        }
+        return _result;
+    }
+
+    public synchronized void awaitIdle() {
+        boolean interrupted = false;
+        while (_busy) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Let the thread exit once the current job, if any, has finished.
+     */
+    public synchronized void shutdown() {
+        _shutdown = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        try {
+            Process.setThreadPriority(RCTCamera.getInstance().getBarcodeScannerThreadPriority());
+        } catch (RuntimeException e) {
+            Log.w(TAG, "failed to set barcode race partner thread priority", e);
+        }
+        while (true) {
+            Job job;
+            synchronized (this) {
+                while (_job == null && !_shutdown) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (_job == null) {
+                    return;
+                }
+                job = _job;
+                _job = null;
+            }
+
+            Result result = null;
+            boolean timedOut = false;
+            try {
+                result = job.run();
+            } catch (DecodeTimeoutException e) {
+                timedOut = true;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "barcode decode failed", e);
+            } finally {
+                synchronized (this) {
+                    _result = result;
+                    _timedOut = timedOut;
+                    _busy = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
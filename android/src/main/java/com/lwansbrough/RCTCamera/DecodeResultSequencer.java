@@ -0,0 +1,81 @@
+package com.lwansbrough.RCTCamera;
+
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts the outcome of frames decoded in parallel back into frame order.
+ *
+ * Every frame handed to a decoder has a sequence number and must be reported through
+ * {@link #complete(long, Result[])} exactly once, successful or not. Results are passed on to the
+ * listener in sequence order as soon as all earlier frames have completed. A result that repeats
+ * one of the last emitted ones from a frame that was being decoded at the same time is dropped,
+ * since it is the same barcode seen by two workers rather than a new read.
+ */
+class DecodeResultSequencer {
+    interface Listener {
+        void onResults(Result[] results);
+    }
+
+    private final Listener _listener;
+    private final int _window;
+    // completed frames waiting for earlier ones, null values for frames without a result
+    private final Map<Long, Result[]> _completed = new HashMap<>();
+    private long _nextToEmit = 0;
+    private Result[] _lastResults;
+    private long _lastResultSequence = Long.MIN_VALUE;
+
+    /**
+     * @param window number of frames that can be in flight at once.
+     */
+    DecodeResultSequencer(int window, Listener listener) {
+        _window = window;
+        _listener = listener;
+    }
+
+    /**
+     * @param results the barcodes found in the frame, or null if there were none.
+     */
+    public synchronized void complete(long sequence, Result[] results) {
+        _completed.put(sequence, results);
+
+        while (_completed.containsKey(_nextToEmit)) {
+            Result[] next = _completed.remove(_nextToEmit);
+            if (next != null) {
+                Result[] fresh = dropConcurrentDuplicates(_nextToEmit, next);
+                if (fresh.length > 0) {
+                    _lastResults = next;
+                    _lastResultSequence = _nextToEmit;
+                    _listener.onResults(fresh);
+                }
+            }
+            _nextToEmit++;
+        }
+    }
+
+    private Result[] dropConcurrentDuplicates(long sequence, Result[] results) {
+        if (_lastResults == null || sequence - _lastResultSequence >= _window) {
+            return results;
+        }
+        List<Result> fresh = new ArrayList<>(results.length);
+        for (Result result : results) {
+            if (!contains(_lastResults, result)) {
+                fresh.add(result);
+            }
+        }
+        return fresh.toArray(new Result[fresh.size()]);
+    }
+
+    private static boolean contains(Result[] results, Result result) {
+        for (Result other : results) {
+            if (other.getBarcodeFormat() == result.getBarcodeFormat() && other.getText().equals(result.getText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
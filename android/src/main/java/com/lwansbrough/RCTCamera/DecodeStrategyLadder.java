@@ -0,0 +1,70 @@
+package com.lwansbrough.RCTCamera;
+
+/**
+ * Decides how hard the decoder tries on each frame.
+ *
+ * Decode strategies are ordered from cheapest to most thorough. Every frame starts with the
+ * cheapest one and stops at the first that finds something. A more expensive step is only added
+ * once the ones before it have failed for a number of consecutive frames, and the ladder drops
+ * back to the bottom as soon as a frame succeeds, so a scanner looking at clean labels spends
+ * nearly all of its time on the fast path.
+ *
+ * Shared by all decode workers, so a worker's failures count towards the escalation of the
+ * others.
+ */
+class DecodeStrategyLadder {
+    // GlobalHistogramBinarizer on a frame subsampled by 2
+    public static final int STEP_DOWNSCALED = 0;
+    // HybridBinarizer at full resolution, what the scanner does without a ladder
+    public static final int STEP_HYBRID = 1;
+    // HybridBinarizer with the TRY_HARDER hint
+    public static final int STEP_TRY_HARDER = 2;
+    // TRY_HARDER on the inverted frame, for light codes on a dark background
+    public static final int STEP_INVERTED = 3;
+
+    private int _escalationFrames = 0;
+    private int _failedFrames = 0;
+    // a frame has failed at the top step since the last success
+    private boolean _exhausted = false;
+
+    /**
+     * @param escalationFrames number of consecutive failed frames after which the next step is
+     * added, 0 to always decode with {@link #STEP_HYBRID} alone.
+     */
+    public synchronized void setEscalationFrames(int escalationFrames) {
+        _escalationFrames = Math.max(0, escalationFrames);
+        _failedFrames = 0;
+        _exhausted = false;
+    }
+
+    /**
+     * Whether the ladder has started climbing and has not failed at its top step yet, so another
+     * look at the same scene may still find something. A static scene that can't be read is let
+     * through the frame change detector until then.
+     */
+    public synchronized boolean isEscalating() {
+        return _escalationFrames > 0 && _failedFrames > 0 && !_exhausted;
+    }
+
+    public synchronized int getFirstStep() {
+        return _escalationFrames > 0 ? STEP_DOWNSCALED : STEP_HYBRID;
+    }
+
+    public synchronized int getLastStep() {
+        if (_escalationFrames <= 0) {
+            return STEP_HYBRID;
+        }
+        return Math.min(STEP_INVERTED, STEP_DOWNSCALED + _failedFrames / _escalationFrames);
+    }
+
+    public synchronized void onFrameDecoded(boolean success) {
+        if (success) {
+            _failedFrames = 0;
+            _exhausted = false;
+        } else if (_escalationFrames > 0 && _failedFrames < STEP_INVERTED * _escalationFrames) {
+            _failedFrames++;
+        } else if (_escalationFrames > 0) {
+            _exhausted = true;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.lwansbrough.RCTCamera;
+
+/**
+ * A decode abandoned because its time budget has run out.
+ */
+class DecodeTimeoutException extends DecodeCancelledException {
+    static final DecodeTimeoutException INSTANCE = new DecodeTimeoutException();
+
+    private DecodeTimeoutException() {
+        super("barcode decode ran out of time");
+    }
+}
@@ -0,0 +1,38 @@
+package com.lwansbrough.RCTCamera;
+
+import android.os.SystemClock;
+
+/**
+ * Lets a running decode be abandoned, either because it ran past its deadline or because another
+ * thread cancelled it. ZXing has no notion of either, so the token is checked cooperatively
+ * wherever our code gets control back: when luminance data is read, and between readers.
+ */
+class DecodeToken {
+    private final long _deadline;
+    private volatile boolean _cancelled = false;
+
+    /**
+     * @param deadline {@link SystemClock#elapsedRealtime()} after which the decode is abandoned,
+     * 0 for none.
+     */
+    DecodeToken(long deadline) {
+        _deadline = deadline;
+    }
+
+    public void cancel() {
+        _cancelled = true;
+    }
+
+    /**
+     * @throws DecodeCancelledException if the decode was cancelled.
+     * @throws DecodeTimeoutException if the deadline has passed.
+     */
+    public void check() {
+        if (_cancelled) {
+            throw DecodeCancelledException.INSTANCE;
+        }
+        if (_deadline != 0 && SystemClock.elapsedRealtime() > _deadline) {
+            throw DecodeTimeoutException.INSTANCE;
+        }
+    }
+}
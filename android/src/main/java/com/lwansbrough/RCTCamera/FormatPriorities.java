@@ -0,0 +1,86 @@
+package com.lwansbrough.RCTCamera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Learns which barcode formats are actually being scanned, so that decode plans can try their
+ * readers for those first.
+ *
+ * Keeps a decayed histogram of successful reads: every read ages all scores by DECAY and adds one
+ * to the format read, so the scores follow what has been scanned recently. Only the order of the
+ * readers is affected, never which formats are looked for.
+ *
+ * Shared by all decode workers. Plans re-sort themselves whenever {@link #getVersion()} changes.
+ */
+class FormatPriorities {
+    private static final String TAG = "RCTCamera";
+    private static final String PREFERENCES_NAME = "RCTCameraBarcodeFormatPriorities";
+    private static final float DECAY = 0.9f;
+
+    private final float[] _scores = new float[BarcodeFormat.values().length];
+    private volatile int _version = 0;
+
+    public int getVersion() {
+        return _version;
+    }
+
+    public synchronized void onDecoded(BarcodeFormat format) {
+        for (int i = 0; i < _scores.length; i++) {
+            _scores[i] *= DECAY;
+        }
+        _scores[format.ordinal()] += 1;
+        _version++;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(_scores, 0);
+        _version++;
+    }
+
+    /**
+     * Sort slots by the combined score of their formats, hottest first, falling back to their
+     * default order.
+     */
+    public synchronized void sort(ReaderSlot<?>[] slots) {
+        final float[] slotScores = new float[slots.length];
+        for (ReaderSlot<?> slot : slots) {
+            float score = 0;
+            for (BarcodeFormat format : slot.formats) {
+                score += _scores[format.ordinal()];
+            }
+            slotScores[slot.defaultOrder] = score;
+        }
+        Arrays.sort(slots, new Comparator<ReaderSlot<?>>() {
+            @Override
+            public int compare(ReaderSlot<?> a, ReaderSlot<?> b) {
+                int byScore = Float.compare(slotScores[b.defaultOrder], slotScores[a.defaultOrder]);
+                return byScore != 0 ? byScore : a.defaultOrder - b.defaultOrder;
+            }
+        });
+    }
+
+    /**
+     * Restore the scores saved by {@link #save(Context)}.
+     */
+    public synchronized void load(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        for (BarcodeFormat format : BarcodeFormat.values()) {
+            _scores[format.ordinal()] = preferences.getFloat(format.name(), 0);
+        }
+        _version++;
+    }
+
+    public synchronized void save(Context context) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit();
+        for (BarcodeFormat format : BarcodeFormat.values()) {
+            editor.putFloat(format.name(), _scores[format.ordinal()]);
+        }
+        editor.apply();
+    }
+}
@@ -0,0 +1,88 @@
+package com.lwansbrough.RCTCamera;
+
+/**
+ * Cheap pre-decode gate that tells whether a preview frame differs from the last frame sent to
+ * the decoder.
+ *
+ * Each frame is reduced to a sparse signature of GRID_SIZE x GRID_SIZE luma samples, and two
+ * frames are considered the same scene when their mean absolute sample difference stays below
+ * the threshold. Pointing the camera at a static scene therefore only costs one decode, until
+ * the scene changes or {@link #invalidate()} is called, e.g. once focus has settled.
+ *
+ * Only ever used from the camera thread, apart from {@link #invalidate()}.
+ */
+class FrameChangeDetector {
+    private static final int GRID_SIZE = 16;
+
+    private int _threshold = 0;
+    private int[] _reference = new int[GRID_SIZE * GRID_SIZE];
+    private int[] _candidate = new int[GRID_SIZE * GRID_SIZE];
+    private boolean _hasReference = false;
+    private volatile boolean _invalidated = false;
+
+    /**
+     * @param threshold mean absolute luma difference (0-255) below which a frame counts as
+     * unchanged, 0 to let every frame through.
+     */
+    public void setThreshold(int threshold) {
+        _threshold = Math.max(0, threshold);
+    }
+
+    public boolean isEnabled() {
+        return _threshold > 0;
+    }
+
+    /**
+     * Forget the last decoded frame, so the next frame is decoded no matter what.
+     */
+    public void invalidate() {
+        _invalidated = true;
+    }
+
+    /**
+     * Whether the frame differs enough from the last decoded frame to be worth decoding. Call
+     * {@link #markDecoded()} if the frame is then actually handed to the decoder.
+     */
+    public boolean hasChanged(PreviewFrame frame) {
+        if (!isEnabled()) {
+            return true;
+        }
+        computeSignature(frame, _candidate);
+        if (!_hasReference || _invalidated) {
+            return true;
+        }
+        int difference = 0;
+        for (int i = 0; i < _candidate.length; i++) {
+            difference += Math.abs(_candidate[i] - _reference[i]);
+        }
+        return difference > _threshold * _candidate.length;
+    }
+
+    /**
+     * Make the frame last passed to {@link #hasChanged(PreviewFrame)} the new reference.
+     */
+    public void markDecoded() {
+        if (!isEnabled()) {
+            return;
+        }
+        int[] reference = _reference;
+        _reference = _candidate;
+        _candidate = reference;
+        _hasReference = true;
+        _invalidated = false;
+    }
+
+    private static void computeSignature(PreviewFrame frame, int[] signature) {
+        byte[] data = frame.data;
+        int width = frame.width;
+        int height = frame.height;
+        for (int gridY = 0; gridY < GRID_SIZE; gridY++) {
+            // sample cell centers so the grid is evenly spread over the frame
+            int rowOffset = ((2 * gridY + 1) * height / (2 * GRID_SIZE)) * width;
+            for (int gridX = 0; gridX < GRID_SIZE; gridX++) {
+                int x = (2 * gridX + 1) * width / (2 * GRID_SIZE);
+                signature[gridY * GRID_SIZE + gridX] = data[rowOffset + x] & 0xff;
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.lwansbrough.RCTCamera;
+
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes a single preview frame. Holds ZXing reader instances, which are not thread safe, so
+ * every decode worker owns its own FrameDecoder. The readers are rebuilt whenever the set of
+ * formats to look for changes.
+ *
+ * Each frame is tried with the steps of a {@link DecodeStrategyLadder}, from cheapest to most
+ * thorough, until one of them finds something, or until the decode deadline passes.
+ *
+ * When only 1D formats are looked for, scanline mode samples a few rows across the middle of the
+ * frame into a {@link ScanlineLuminanceSource} and decodes just those, like a laser scanner. It
+ * stands in for the cheapest ladder step, and is all that is tried when the ladder is disabled.
+ *
+ * When both 1D and 2D formats are looked for, racing mode runs the 1D readers on the worker
+ * thread and the 2D readers on a {@link DecodeRacePartner} at the same time, over the same
+ * read-only frame. Whichever finds a barcode first cancels the other, so a frame costs as much as
+ * the slower group rather than both together. The worker does not wait for a cancelled 2D side
+ * to wind down, the next frame does.
+ *
+ * Result points are reported in the coordinates of the whole upright frame, regardless of the
+ * scan area the frame was cropped to or the resolution it was decoded at.
+ */
+class FrameDecoder {
+    // don't subsample frames (or scan areas) whose short side would end up smaller than this
+    private static final int MIN_DOWNSCALED_SIZE = 160;
+    private static final int DOWNSCALE_FACTOR = 2;
+    // 1D readers look at up to 15 rows without TRY_HARDER
+    public static final int MAX_SCANLINES = 15;
+
+    private Set<BarcodeFormat> _formats;
+    private Map<DecodeHintType, Object> _hints;
+    private Map<DecodeHintType, Object> _tryHarderHints;
+    private DecodePlan _plan;
+    private MultipleBarcodeReader _multipleReader;
+    private boolean _multiple = false;
+    private long _deadline = 0;
+    private FormatPriorities _priorities;
+    private int _scanlines = 0;
+    private boolean _racing = false;
+    // started on the first race
+    private DecodeRacePartner _racePartner;
+
+    /**
+     * @param formats the formats to look for, all of them if empty. Must not be modified
+     * afterwards, a changed configuration is recognized by identity.
+     */
+    public void setFormats(Set<BarcodeFormat> formats) {
+        if (formats != _formats) {
+            buildReaders(formats);
+        }
+    }
+
+    /**
+     * @param priorities learned format priorities to order the readers by, null for the default
+     * order.
+     */
+    public void setPriorities(FormatPriorities priorities) {
+        if (priorities == null && _priorities != null && _formats != null) {
+            awaitRacePartner();
+            // back to the default order
+            buildReaders(_formats);
+        }
+        _priorities = priorities;
+    }
+
+    /**
+     * @param scanlines number of rows to sample in scanline mode, 0 to disable it.
+     */
+    public void setScanlines(int scanlines) {
+        _scanlines = Math.max(0, Math.min(MAX_SCANLINES, scanlines));
+    }
+
+    /**
+     * @param racing race the 1D readers against the 2D readers on two threads.
+     */
+    public void setRacing(boolean racing) {
+        _racing = racing;
+    }
+
+    /**
+     * @param multiple look for every barcode in the frame instead of stopping at the first one.
+     */
+    public void setMultiple(boolean multiple) {
+        _multiple = multiple;
+    }
+
+    /**
+     * @param deadline {@link android.os.SystemClock#elapsedRealtime()} at which to give up, 0 for
+     * none.
+     */
+    public void setDeadline(long deadline) {
+        _deadline = deadline;
+    }
+
+    /**
+     * Stop the race partner thread, if there is one. Call when the worker exits.
+     */
+    public void release() {
+        if (_racePartner != null) {
+            _racePartner.shutdown();
+            _racePartner = null;
+        }
+    }
+
+    /**
+     * @param region part of the frame to decode, normalized to [0, 1] over the upright frame; null
+     * for the whole frame.
+     * @param firstStep first {@link DecodeStrategyLadder} step to try.
+     * @param lastStep last step to try if the previous ones found nothing.
+     * @return the barcodes found, or null if there are none.
+     * @throws DecodeTimeoutException if the deadline passed before the decode completed.
+     */
+    public Result[] decode(PreviewFrame frame, RectF region, int firstStep, int lastStep) {
+        if (_priorities != null) {
+            _plan.prioritize(_priorities);
+        }
+        DecodeToken token = new DecodeToken(_deadline);
+        _plan.setToken(token);
+
+        // read the luma plane in place, rotated upright for zxing
+        RotatedLuminanceSource source = new RotatedLuminanceSource(frame.data, frame.width, frame.height, frame.rotation, token);
+        Rect crop = null;
+        if (region != null) {
+            crop = getCropRect(source, region);
+            source = source.crop(crop.left, crop.top, crop.width(), crop.height());
+        }
+
+        if (_scanlines > 0 && !_multiple && _plan.isOneDOnly()) {
+            Result[] results = decodeScanlines(source, crop);
+            if (results != null || firstStep != DecodeStrategyLadder.STEP_DOWNSCALED) {
+                return results;
+            }
+            firstStep = DecodeStrategyLadder.STEP_DOWNSCALED + 1;
+        }
+
+        boolean race = _racing && !_multiple && _plan.hasOneDAndTwoD();
+        for (int step = firstStep; step <= lastStep; step++) {
+            token.check();
+            Map<DecodeHintType, Object> hints = step >= DecodeStrategyLadder.STEP_TRY_HARDER ? _tryHarderHints : _hints;
+            Result[] results = race ? race(source, step, hints) : decode(createBitmap(source, step), hints);
+            if (results != null) {
+                int scale = getScale(source, step);
+                for (Result result : results) {
+                    transformResultPoints(result, scale, crop != null ? crop.left : 0, crop != null ? crop.top : 0);
+                }
+                return results;
+            }
+        }
+        return null;
+    }
+
+    private static BinaryBitmap createBitmap(RotatedLuminanceSource source, int step) {
+        switch (step) {
+            case DecodeStrategyLadder.STEP_DOWNSCALED:
+                int scale = getScale(source, step);
+                return new BinaryBitmap(new GlobalHistogramBinarizer(scale > 1 ? source.subsample(scale) : source));
+            case DecodeStrategyLadder.STEP_HYBRID:
+            case DecodeStrategyLadder.STEP_TRY_HARDER:
+                return new BinaryBitmap(new HybridBinarizer(source));
+            case DecodeStrategyLadder.STEP_INVERTED:
+                return new BinaryBitmap(new HybridBinarizer(source.invert()));
+            default:
+                throw new IllegalArgumentException("Unknown decode step: " + step);
+        }
+    }
+
+    /**
+     * Factor by which the given step decodes the source at a lower resolution.
+     */
+    private static int getScale(RotatedLuminanceSource source, int step) {
+        if (step == DecodeStrategyLadder.STEP_DOWNSCALED
+                && Math.min(source.getWidth(), source.getHeight()) >= MIN_DOWNSCALED_SIZE * DOWNSCALE_FACTOR) {
+            return DOWNSCALE_FACTOR;
+        }
+        return 1;
+    }
+
+    private Result[] race(RotatedLuminanceSource source, int step, final Map<DecodeHintType, Object> hints) {
+        // each side binarizes on its own and can be cancelled on its own
+        final DecodeToken oneDToken = new DecodeToken(_deadline);
+        final DecodeToken twoDToken = new DecodeToken(_deadline);
+        final BinaryBitmap twoDBitmap = createBitmap(source.withToken(twoDToken), step);
+        BinaryBitmap oneDBitmap = createBitmap(source.withToken(oneDToken), step);
+        final DecodePlan plan = _plan;
+
+        if (_racePartner == null) {
+            _racePartner = new DecodeRacePartner();
+            _racePartner.start();
+        }
+        _racePartner.submit(new DecodeRacePartner.Job() {
+            @Override
+            public Result run() {
+                try {
+                    Result result = plan.decodeTwoD(twoDBitmap, hints, twoDToken);
+                    oneDToken.cancel();
+                    return result;
+                } catch (ReaderException e) {
+                    return null;
+                } catch (DecodeTimeoutException e) {
+                    // passed on by awaitResult()
+                    throw e;
+                } catch (DecodeCancelledException e) {
+                    // the 1D readers won
+                    return null;
+                } finally {
+                    plan.resetTwoD();
+                }
+            }
+        });
+
+        OneDReaderGroup oneDReaders = plan.getOneDReaders();
+        boolean isTwoDDone = false;
+        try {
+            Result result = null;
+            try {
+                result = oneDReaders.decode(oneDBitmap, hints);
+            } catch (ReaderException e) {
+                // nothing found, wait for the 2D readers
+            } catch (DecodeCancelledException e) {
+                // the 2D readers won
+            } finally {
+                oneDReaders.reset();
+            }
+            if (result != null) {
+                return new Result[] { result };
+            }
+            // throws DecodeTimeoutException if the 2D readers ran out of time
+            Result twoDResult = _racePartner.awaitResult();
+            isTwoDDone = true;
+            return twoDResult != null ? new Result[] { twoDResult } : null;
+        } finally {
+            if (!isTwoDDone) {
+                // the 1D readers won, timed out or failed, while the 2D readers may still be
+                // reading the frame, which is released as soon as we return
+                twoDToken.cancel();
+                _racePartner.awaitIdle();
+            }
+        }
+    }
+
+    private void awaitRacePartner() {
+        if (_racePartner != null) {
+            _racePartner.awaitIdle();
+        }
+    }
+
+    private Result[] decodeScanlines(RotatedLuminanceSource source, Rect crop) {
+        // spread the rows over the middle half of the frame
+        int spacing = Math.max(1, source.getHeight() / (2 * _scanlines));
+        ScanlineLuminanceSource scanlines = new ScanlineLuminanceSource(source, _scanlines, spacing);
+        // the global histogram binarizer only ever looks at the row asked for
+        BinaryBitmap bitmap = new BinaryBitmap(new GlobalHistogramBinarizer(scanlines));
+        OneDReaderGroup reader = _plan.getOneDReaders();
+        Result result;
+        try {
+            result = reader.decode(bitmap, _hints);
+        } catch (ReaderException e) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+
+        int dx = crop != null ? crop.left : 0;
+        int dy = crop != null ? crop.top : 0;
+        ResultPoint[] points = result.getResultPoints();
+        if (points != null) {
+            for (int i = 0; i < points.length; i++) {
+                if (points[i] != null) {
+                    int row = Math.max(0, Math.min(scanlines.getHeight() - 1, Math.round(points[i].getY())));
+                    points[i] = new ResultPoint(points[i].getX() + dx, scanlines.getSourceRow(row) + dy);
+                }
+            }
+        }
+        return new Result[] { result };
+    }
+
+    private Result[] decode(BinaryBitmap bitmap, Map<DecodeHintType, Object> hints) {
+        try {
+            if (_multiple) {
+                return _multipleReader.decodeMultiple(bitmap, hints);
+            } else {
+                return new Result[] { _plan.decode(bitmap, hints) };
+            }
+        } catch (ReaderException e) {
+            // nothing found with this strategy
+            return null;
+        } finally {
+            // also drops any state left behind by an abandoned decode
+            _plan.reset();
+        }
+    }
+
+    private void buildReaders(Set<BarcodeFormat> formats) {
+        awaitRacePartner();
+        _formats = formats;
+        _hints = new EnumMap<>(DecodeHintType.class);
+        _hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        _tryHarderHints = new EnumMap<>(_hints);
+        _tryHarderHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        _plan = new DecodePlan(formats, _hints);
+        boolean qrCodesOnly = formats.size() == 1 && formats.contains(BarcodeFormat.QR_CODE);
+        // the dedicated QR reader finds all codes in one pass instead of recursing into sub-images
+        _multipleReader = qrCodesOnly ? new QRCodeMultiReader() : new GenericMultipleBarcodeReader(_plan);
+    }
+
+    private static Rect getCropRect(LuminanceSource source, RectF region) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int left = (int) (region.left * width);
+        int top = (int) (region.top * height);
+        int right = (int) Math.ceil(region.right * width);
+        int bottom = (int) Math.ceil(region.bottom * height);
+        return new Rect(left, top, Math.max(left + 1, Math.min(right, width)), Math.max(top + 1, Math.min(bottom, height)));
+    }
+
+    private static void transformResultPoints(Result result, int scale, int dx, int dy) {
+        if (scale == 1 && dx == 0 && dy == 0) {
+            return;
+        }
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null) {
+            return;
+        }
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] != null) {
+                points[i] = new ResultPoint(points[i].getX() * scale + dx, points[i].getY() * scale + dy);
+            }
+        }
+    }
+}
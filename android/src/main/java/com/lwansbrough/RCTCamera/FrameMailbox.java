@@ -0,0 +1,55 @@
+package com.lwansbrough.RCTCamera;
+
+/**
+ * Single-slot hand-off between the camera thread and decode workers. Posting a frame replaces
+ * (and releases) whatever frame was still waiting, so a worker always picks up the most recent
+ * preview and never works on a stale one.
+ *
+ * Frames are numbered in the order they are taken, which lets parallel workers put their results
+ * back in order.
+ */
+class FrameMailbox {
+    private PreviewFrame _frame;
+    private boolean _closed;
+    private long _nextSequence = 0;
+
+    public synchronized void post(PreviewFrame frame) {
+        if (_closed) {
+            frame.release();
+            return;
+        }
+        if (_frame != null) {
+            ScannerStats.getInstance().onFrameDropped();
+            _frame.release();
+        }
+        _frame = frame;
+        notifyAll();
+    }
+
+    /**
+     * Block until a frame is available.
+     *
+     * @return the latest frame, or null once the mailbox has been closed.
+     */
+    public synchronized PreviewFrame take() throws InterruptedException {
+        while (_frame == null && !_closed) {
+            wait();
+        }
+        PreviewFrame frame = _frame;
+        _frame = null;
+        if (frame != null) {
+            frame.sequence = _nextSequence++;
+        }
+        return frame;
+    }
+
+    public synchronized void close() {
+        _closed = true;
+        if (_frame != null) {
+            ScannerStats.getInstance().onFrameDropped();
+            _frame.release();
+            _frame = null;
+        }
+        notifyAll();
+    }
+}
@@ -0,0 +1,19 @@
+package com.lwansbrough.RCTCamera;
+
+/**
+ * Analyzer of camera preview frames, registered with
+ * {@link RCTCameraView#addFrameProcessor(FrameProcessor, float)}.
+ *
+ * Preview frames are only delivered while at least one processor is registered or the barcode
+ * scanner is enabled. Each of them is a copy of the luma plane of a camera frame, see
+ * {@link LumaDecimator}, shared between all processors and the scanner.
+ */
+public interface FrameProcessor {
+    /**
+     * Called on the camera thread for every frame the processor's rate allows, and must return
+     * quickly since the camera won't deliver the next frame until it does. The frame is only valid
+     * during the call. To work on it on another thread, {@link PreviewFrame#retain()} it and
+     * {@link PreviewFrame#release()} it once done.
+     */
+    void process(PreviewFrame frame);
+}
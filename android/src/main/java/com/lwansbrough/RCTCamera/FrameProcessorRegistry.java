@@ -0,0 +1,71 @@
+package com.lwansbrough.RCTCamera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The frame processors of a camera view, each with its own maximum frame rate.
+ *
+ * Processors are added and removed on the UI thread and frames dispatched on the camera thread,
+ * so registrations are kept in a copy on write list rather than locked.
+ */
+class FrameProcessorRegistry {
+    private static final String TAG = "RCTCamera";
+
+    private static class Registration {
+        final FrameProcessor processor;
+        final long minIntervalMs;
+        long lastFrameTime = -1;
+
+        Registration(FrameProcessor processor, long minIntervalMs) {
+            this.processor = processor;
+            this.minIntervalMs = minIntervalMs;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Registration> _registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Add a processor, or change the frame rate of one already added.
+     *
+     * @param maxFrameRate frames per second the processor is handed at most, 0 for every frame.
+     */
+    public synchronized void add(FrameProcessor processor, float maxFrameRate) {
+        remove(processor);
+        long minIntervalMs = maxFrameRate > 0 ? (long) (1000 / maxFrameRate) : 0;
+        _registrations.add(new Registration(processor, minIntervalMs));
+    }
+
+    public synchronized void remove(FrameProcessor processor) {
+        for (Registration registration : _registrations) {
+            if (registration.processor == processor) {
+                _registrations.remove(registration);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return _registrations.isEmpty();
+    }
+
+    /**
+     * Hand the frame to every processor that is due for one. The caller keeps its own reference to
+     * the frame and releases it afterwards.
+     */
+    public void dispatch(PreviewFrame frame) {
+        long now = SystemClock.elapsedRealtime();
+        for (Registration registration : _registrations) {
+            if (registration.lastFrameTime >= 0 && now - registration.lastFrameTime < registration.minIntervalMs) {
+                continue;
+            }
+            registration.lastFrameTime = now;
+            try {
+                registration.processor.process(frame);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "frame processor failed", e);
+            }
+        }
+    }
+}
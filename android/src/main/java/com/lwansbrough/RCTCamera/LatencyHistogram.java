@@ -0,0 +1,99 @@
+package com.lwansbrough.RCTCamera;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations in microseconds, with log-linear buckets in the manner of
+ * HdrHistogram: every power of two is split into {@link #SUB_BUCKETS} equal buckets, so any
+ * recorded value is known to within 25% whatever its magnitude, in a fixed 120 counters.
+ *
+ * Recording is a couple of atomic increments, cheap enough for every decoded frame. Reads are not
+ * a consistent snapshot, which is fine for statistics.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values above about 35 minutes land in the last bucket
+    private static final long MAX_VALUE = Integer.MAX_VALUE;
+    private static final int BUCKET_COUNT = (31 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong _count = new AtomicLong();
+    private final AtomicLong _total = new AtomicLong();
+    private final AtomicLong _max = new AtomicLong();
+
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(MAX_VALUE, micros));
+        _counts.incrementAndGet(getBucket(value));
+        _count.incrementAndGet();
+        _total.addAndGet(value);
+        long max;
+        while (value > (max = _max.get()) && !_max.compareAndSet(max, value)) {
+            // lost a race with another thread, try again
+        }
+    }
+
+    public long getCount() {
+        return _count.get();
+    }
+
+    /**
+     * Value below which the given fraction of the recorded values fall, in microseconds, as the
+     * middle of the bucket it falls in. 0 if nothing was recorded.
+     */
+    public long getPercentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += _counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += _counts.get(i);
+            if (seen >= rank) {
+                return Math.min(_max.get(), (getLowestValue(i) + getLowestValue(i + 1) - 1) / 2);
+            }
+        }
+        return _max.get();
+    }
+
+    /**
+     * Count, mean, median, 90th and 99th percentiles and maximum, in milliseconds.
+     */
+    public WritableMap toMap() {
+        WritableMap map = Arguments.createMap();
+        long count = _count.get();
+        map.putDouble("count", count);
+        map.putDouble("mean", count > 0 ? _total.get() / 1000.0 / count : 0);
+        map.putDouble("p50", getPercentile(0.5) / 1000.0);
+        map.putDouble("p90", getPercentile(0.9) / 1000.0);
+        map.putDouble("p99", getPercentile(0.99) / 1000.0);
+        map.putDouble("max", _max.get() / 1000.0);
+        return map;
+    }
+
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    private static long getLowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int mantissa = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + mantissa) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,1030 @@
+package com.lwansbrough.RCTCamera;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rotates and mirrors a JPEG without decoding it to pixels, in the manner of jpegtran.
+ *
+ * The entropy coded data is decoded to quantized DCT coefficients, and whole 8x8 blocks are
+ * moved to their new place. Within a block, mirroring negates the odd frequencies along the
+ * mirrored axis and transposing swaps rows and columns, so the image is transformed exactly,
+ * without the loss of a decode and re-encode and without ever holding a bitmap. The result is
+ * written with Huffman tables optimized for the transformed data.
+ *
+ * Only blocks move, so an edge that is not a whole number of MCUs (8 or 16 pixels) cannot end up
+ * on the left or top. Such an edge is trimmed, as with jpegtran -trim, unless trimming is not
+ * allowed, in which case the transform fails and the caller has to go through a bitmap.
+ *
+ * Supports baseline and extended sequential Huffman coded JPEGs with 8 bit samples and all
+ * components in one scan, which is what cameras produce. Progressive and arithmetic coded
+ * images are rejected.
+ */
+final class LosslessJpegTransformer {
+    // natural (row major) index of each coefficient in zigzag order
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private static final int SOF0 = 0xC0;
+    private static final int SOF1 = 0xC1;
+    private static final int DHT = 0xC4;
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DQT = 0xDB;
+    private static final int DRI = 0xDD;
+    private static final int APP0 = 0xE0;
+    private static final int APP15 = 0xEF;
+    private static final int COM = 0xFE;
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int EXIF_IFD_POINTER_TAG = 0x8769;
+    private static final int EXIF_PIXEL_X_DIMENSION_TAG = 0xA002;
+    private static final int EXIF_PIXEL_Y_DIMENSION_TAG = 0xA003;
+    private static final int EXIF_TYPE_SHORT = 3;
+    private static final int EXIF_TYPE_LONG = 4;
+
+    static class UnsupportedJpegException extends Exception {
+        UnsupportedJpegException(String detailMessage) {
+            super(detailMessage);
+        }
+    }
+
+    private LosslessJpegTransformer() {
+    }
+
+    /**
+     * Whether an EXIF orientation transposes the image, i.e. swaps its width and height.
+     */
+    public static boolean isTransposing(int exifOrientation) {
+        return exifOrientation >= 5 && exifOrientation <= 8;
+    }
+
+    /**
+     * The single EXIF orientation that has the same effect as applying first, then then.
+     */
+    public static int combine(int first, int then) {
+        int[] a = toMatrix(first);
+        int[] b = toMatrix(then);
+        // row major 2x2 matrices acting on centered pixel coordinates, b * a
+        int[] m = {
+                b[0] * a[0] + b[1] * a[2], b[0] * a[1] + b[1] * a[3],
+                b[2] * a[0] + b[3] * a[2], b[2] * a[1] + b[3] * a[3]
+        };
+        boolean transpose = m[0] == 0;
+        boolean flipH = (transpose ? m[1] : m[0]) < 0;
+        boolean flipV = (transpose ? m[2] : m[3]) < 0;
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            if (isTransposing(orientation) == transpose && flipsHorizontally(orientation) == flipH && flipsVertically(orientation) == flipV) {
+                return orientation;
+            }
+        }
+        throw new IllegalArgumentException("invalid orientations " + first + ", " + then);
+    }
+
+    /**
+     * Apply the transform that an EXIF orientation asks for, see
+     * http://www.impulseadventure.com/photo/exif-orientation.html
+     *
+     * @param trim drop partial MCUs on edges that would otherwise end up on the left or top,
+     * rather than fail.
+     * @param resetOrientationTag also set the EXIF orientation tag of the result to 1.
+     */
+    public static byte[] transform(byte[] jpeg, int exifOrientation, boolean trim, boolean resetOrientationTag) throws UnsupportedJpegException {
+        if (exifOrientation < 1 || exifOrientation > 8) {
+            throw new UnsupportedJpegException("invalid orientation " + exifOrientation);
+        }
+        try {
+            Image image = Image.read(jpeg);
+            return image.write(exifOrientation, trim, resetOrientationTag);
+        } catch (IndexOutOfBoundsException e) {
+            throw new UnsupportedJpegException("truncated or corrupt jpeg");
+        }
+    }
+
+    // the transform of an orientation is a transpose, followed by a horizontal and then a
+    // vertical flip, each of them optional
+    private static boolean flipsHorizontally(int exifOrientation) {
+        return exifOrientation == 2 || exifOrientation == 3 || exifOrientation == 6 || exifOrientation == 7;
+    }
+
+    private static boolean flipsVertically(int exifOrientation) {
+        return exifOrientation == 3 || exifOrientation == 4 || exifOrientation == 7 || exifOrientation == 8;
+    }
+
+    private static int[] toMatrix(int exifOrientation) {
+        int h = flipsHorizontally(exifOrientation) ? -1 : 1;
+        int v = flipsVertically(exifOrientation) ? -1 : 1;
+        return isTransposing(exifOrientation) ? new int[]{0, h, v, 0} : new int[]{h, 0, 0, v};
+    }
+
+    private static class Component {
+        int id;
+        int h;
+        int v;
+        int quantTable;
+        int dcTable;
+        int acTable;
+        // blocks per row and column, padded to whole MCUs
+        int blocksWide;
+        int blocksHigh;
+        // quantized coefficients, 64 per block in natural order, blocks in raster order
+        short[] coefficients;
+    }
+
+    private static class Image {
+        int sofMarker;
+        int width;
+        int height;
+        int maxH;
+        int maxV;
+        Component[] components;
+        // precision (0 for 8 bit, 1 for 16 bit) and values in natural order, by table id
+        final int[] quantPrecision = new int[4];
+        final int[][] quantTables = new int[4][];
+        final HuffmanDecoder[] dcTables = new HuffmanDecoder[4];
+        final HuffmanDecoder[] acTables = new HuffmanDecoder[4];
+        int restartInterval;
+        // APPn and COM segments, marker included, kept as they are
+        final List<byte[]> segments = new ArrayList<>();
+
+        static Image read(byte[] data) throws UnsupportedJpegException {
+            if ((data[0] & 0xff) != 0xFF || (data[1] & 0xff) != SOI) {
+                throw new UnsupportedJpegException("not a jpeg");
+            }
+            Image image = new Image();
+            int pos = 2;
+            while (true) {
+                if ((data[pos] & 0xff) != 0xFF) {
+                    throw new UnsupportedJpegException("marker expected");
+                }
+                int marker = data[pos + 1] & 0xff;
+                if (marker == 0xFF) {
+                    // fill byte
+                    pos++;
+                    continue;
+                }
+                if (marker == EOI) {
+                    throw new UnsupportedJpegException("no image data");
+                }
+                int length = readUnsignedShort(data, pos + 2);
+                int start = pos + 4;
+                int end = pos + 2 + length;
+                if (marker == SOF0 || marker == SOF1) {
+                    image.readFrame(data, start, marker);
+                } else if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC) {
+                    throw new UnsupportedJpegException("unsupported coding process");
+                } else if (marker == DQT) {
+                    image.readQuantTables(data, start, end);
+                } else if (marker == DHT) {
+                    image.readHuffmanTables(data, start, end);
+                } else if (marker == DRI) {
+                    image.restartInterval = readUnsignedShort(data, start);
+                } else if ((marker >= APP0 && marker <= APP15) || marker == COM) {
+                    byte[] segment = new byte[end - pos];
+                    System.arraycopy(data, pos, segment, 0, segment.length);
+                    image.segments.add(segment);
+                } else if (marker == SOS) {
+                    image.readScan(data, start, end);
+                    return image;
+                }
+                pos = end;
+            }
+        }
+
+        private void readFrame(byte[] data, int pos, int marker) throws UnsupportedJpegException {
+            if ((data[pos] & 0xff) != 8) {
+                throw new UnsupportedJpegException("unsupported sample precision");
+            }
+            sofMarker = marker;
+            height = readUnsignedShort(data, pos + 1);
+            width = readUnsignedShort(data, pos + 3);
+            int count = data[pos + 5] & 0xff;
+            if (width == 0 || height == 0 || count == 0) {
+                throw new UnsupportedJpegException("unsupported frame");
+            }
+            components = new Component[count];
+            maxH = 1;
+            maxV = 1;
+            for (int i = 0; i < count; i++) {
+                Component component = new Component();
+                int offset = pos + 6 + i * 3;
+                component.id = data[offset] & 0xff;
+                component.h = count == 1 ? 1 : (data[offset + 1] & 0xff) >> 4;
+                component.v = count == 1 ? 1 : data[offset + 1] & 0x0f;
+                component.quantTable = data[offset + 2] & 0x03;
+                if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4) {
+                    throw new UnsupportedJpegException("invalid sampling factors");
+                }
+                maxH = Math.max(maxH, component.h);
+                maxV = Math.max(maxV, component.v);
+                components[i] = component;
+            }
+            int mcusWide = getMcusWide();
+            int mcusHigh = getMcusHigh();
+            for (Component component : components) {
+                component.blocksWide = mcusWide * component.h;
+                component.blocksHigh = mcusHigh * component.v;
+                component.coefficients = new short[component.blocksWide * component.blocksHigh * 64];
+            }
+        }
+
+        private void readQuantTables(byte[] data, int pos, int end) {
+            while (pos < end) {
+                int precision = (data[pos] & 0xff) >> 4;
+                int id = data[pos] & 0x03;
+                pos++;
+                int[] table = new int[64];
+                for (int k = 0; k < 64; k++) {
+                    if (precision == 0) {
+                        table[ZIGZAG[k]] = data[pos++] & 0xff;
+                    } else {
+                        table[ZIGZAG[k]] = readUnsignedShort(data, pos);
+                        pos += 2;
+                    }
+                }
+                quantPrecision[id] = precision;
+                quantTables[id] = table;
+            }
+        }
+
+        private void readHuffmanTables(byte[] data, int pos, int end) {
+            while (pos < end) {
+                int tableClass = (data[pos] & 0xff) >> 4;
+                int id = data[pos] & 0x03;
+                int[] bits = new int[17];
+                int count = 0;
+                for (int length = 1; length <= 16; length++) {
+                    bits[length] = data[pos + length] & 0xff;
+                    count += bits[length];
+                }
+                pos += 17;
+                int[] values = new int[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = data[pos + i] & 0xff;
+                }
+                pos += count;
+                HuffmanDecoder decoder = new HuffmanDecoder(bits, values);
+                if (tableClass == 0) {
+                    dcTables[id] = decoder;
+                } else {
+                    acTables[id] = decoder;
+                }
+            }
+        }
+
+        private void readScan(byte[] data, int pos, int end) throws UnsupportedJpegException {
+            if (components == null) {
+                throw new UnsupportedJpegException("scan before frame");
+            }
+            int count = data[pos] & 0xff;
+            if (count != components.length) {
+                throw new UnsupportedJpegException("components in separate scans");
+            }
+            for (int i = 0; i < count; i++) {
+                int id = data[pos + 1 + i * 2] & 0xff;
+                int tables = data[pos + 2 + i * 2] & 0xff;
+                Component component = findComponent(id);
+                component.dcTable = tables >> 4 & 0x03;
+                component.acTable = tables & 0x03;
+                if (dcTables[component.dcTable] == null || acTables[component.acTable] == null) {
+                    throw new UnsupportedJpegException("missing huffman table");
+                }
+                if (quantTables[component.quantTable] == null) {
+                    throw new UnsupportedJpegException("missing quantization table");
+                }
+            }
+            int spectralStart = data[pos + 1 + count * 2] & 0xff;
+            int spectralEnd = data[pos + 2 + count * 2] & 0xff;
+            int approximation = data[pos + 3 + count * 2] & 0xff;
+            if (spectralStart != 0 || spectralEnd != 63 || approximation != 0) {
+                throw new UnsupportedJpegException("unsupported scan");
+            }
+            decodeScan(new BitReader(data, end));
+        }
+
+        private Component findComponent(int id) throws UnsupportedJpegException {
+            for (Component component : components) {
+                if (component.id == id) {
+                    return component;
+                }
+            }
+            throw new UnsupportedJpegException("unknown component " + id);
+        }
+
+        private void decodeScan(BitReader reader) throws UnsupportedJpegException {
+            int[] predictions = new int[components.length];
+            int mcusWide = getMcusWide();
+            int mcusHigh = getMcusHigh();
+            int mcu = 0;
+            for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+                for (int mcuX = 0; mcuX < mcusWide; mcuX++, mcu++) {
+                    if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                        reader.restart();
+                        for (int i = 0; i < predictions.length; i++) {
+                            predictions[i] = 0;
+                        }
+                    }
+                    for (int i = 0; i < components.length; i++) {
+                        Component component = components[i];
+                        HuffmanDecoder dc = dcTables[component.dcTable];
+                        HuffmanDecoder ac = acTables[component.acTable];
+                        for (int y = 0; y < component.v; y++) {
+                            int row = mcuY * component.v + y;
+                            for (int x = 0; x < component.h; x++) {
+                                int block = row * component.blocksWide + mcuX * component.h + x;
+                                predictions[i] = decodeBlock(reader, dc, ac, predictions[i], component.coefficients, block * 64);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private static int decodeBlock(BitReader reader, HuffmanDecoder dc, HuffmanDecoder ac, int prediction, short[] coefficients, int offset) throws UnsupportedJpegException {
+            int size = dc.decode(reader);
+            prediction += extend(reader.getBits(size), size);
+            coefficients[offset] = (short) prediction;
+            for (int k = 1; k < 64; k++) {
+                int symbol = ac.decode(reader);
+                int run = symbol >> 4;
+                size = symbol & 0x0f;
+                if (size == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 15;
+                    continue;
+                }
+                k += run;
+                if (k > 63) {
+                    throw new UnsupportedJpegException("corrupt block");
+                }
+                coefficients[offset + ZIGZAG[k]] = (short) extend(reader.getBits(size), size);
+            }
+            return prediction;
+        }
+
+        private int getMcusWide() {
+            return (width + 8 * maxH - 1) / (8 * maxH);
+        }
+
+        private int getMcusHigh() {
+            return (height + 8 * maxV - 1) / (8 * maxV);
+        }
+
+        byte[] write(int orientation, boolean trim, boolean resetOrientationTag) throws UnsupportedJpegException {
+            boolean transpose = isTransposing(orientation);
+            boolean flipH = flipsHorizontally(orientation);
+            boolean flipV = flipsVertically(orientation);
+
+            // source edges that end up on the left or top have to be whole MCUs
+            boolean alignWidth = transpose ? flipV : flipH;
+            boolean alignHeight = transpose ? flipH : flipV;
+            int usedWidth = width;
+            int usedHeight = height;
+            if (alignWidth && width % (8 * maxH) != 0) {
+                usedWidth = width / (8 * maxH) * 8 * maxH;
+            }
+            if (alignHeight && height % (8 * maxV) != 0) {
+                usedHeight = height / (8 * maxV) * 8 * maxV;
+            }
+            if (usedWidth != width || usedHeight != height) {
+                if (!trim) {
+                    throw new UnsupportedJpegException("edges are not whole MCUs");
+                }
+                if (usedWidth == 0 || usedHeight == 0) {
+                    throw new UnsupportedJpegException("image smaller than an MCU");
+                }
+            }
+            int mcusWide = (usedWidth + 8 * maxH - 1) / (8 * maxH);
+            int mcusHigh = (usedHeight + 8 * maxV - 1) / (8 * maxV);
+
+            // where each coefficient of a transformed block comes from, and its sign
+            int[] sourceIndex = new int[64];
+            int[] sign = new int[64];
+            for (int row = 0; row < 8; row++) {
+                for (int column = 0; column < 8; column++) {
+                    int index = row * 8 + column;
+                    sourceIndex[index] = transpose ? column * 8 + row : index;
+                    sign[index] = ((flipH && (column & 1) == 1) ? -1 : 1) * ((flipV && (row & 1) == 1) ? -1 : 1);
+                }
+            }
+
+            Image result = new Image();
+            result.sofMarker = sofMarker;
+            result.width = transpose ? usedHeight : usedWidth;
+            result.height = transpose ? usedWidth : usedHeight;
+            result.maxH = transpose ? maxV : maxH;
+            result.maxV = transpose ? maxH : maxV;
+            BlockMapping[] mappings = new BlockMapping[components.length];
+            result.components = new Component[components.length];
+            for (int i = 0; i < components.length; i++) {
+                Component source = components[i];
+                Component component = new Component();
+                component.id = source.id;
+                component.h = transpose ? source.v : source.h;
+                component.v = transpose ? source.h : source.v;
+                component.quantTable = source.quantTable;
+                // the first component gets the luma tables, the others share the chroma ones
+                component.dcTable = i == 0 ? 0 : 1;
+                component.acTable = i == 0 ? 0 : 1;
+                int sourceBlocksWide = mcusWide * source.h;
+                int sourceBlocksHigh = mcusHigh * source.v;
+                component.blocksWide = transpose ? sourceBlocksHigh : sourceBlocksWide;
+                component.blocksHigh = transpose ? sourceBlocksWide : sourceBlocksHigh;
+                result.components[i] = component;
+                mappings[i] = new BlockMapping(source, component, transpose, flipH, flipV, sourceIndex, sign);
+            }
+            for (int id = 0; id < 4; id++) {
+                int[] table = quantTables[id];
+                if (table != null) {
+                    result.quantPrecision[id] = quantPrecision[id];
+                    result.quantTables[id] = transpose ? transposeTable(table) : table;
+                }
+            }
+
+            // first pass gathers symbol statistics for the huffman tables, second one writes
+            HuffmanEncoder[] dcEncoders = {new HuffmanEncoder(), new HuffmanEncoder()};
+            HuffmanEncoder[] acEncoders = {new HuffmanEncoder(), new HuffmanEncoder()};
+            result.encodeScan(mappings, dcEncoders, acEncoders, null);
+            for (int i = 0; i < 2; i++) {
+                dcEncoders[i].buildTable();
+                acEncoders[i].buildTable();
+            }
+            BitWriter writer = new BitWriter(estimateSize());
+            result.encodeScan(mappings, dcEncoders, acEncoders, writer);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(writer.size() + 4096);
+            output.write(0xFF);
+            output.write(SOI);
+            for (byte[] segment : segments) {
+                segment = rewriteExif(segment, resetOrientationTag, result.width, result.height);
+                output.write(segment, 0, segment.length);
+            }
+            result.writeQuantTables(output);
+            result.writeFrame(output);
+            int tableCount = components.length == 1 ? 1 : 2;
+            for (int i = 0; i < tableCount; i++) {
+                writeHuffmanTable(output, 0, i, dcEncoders[i]);
+                writeHuffmanTable(output, 1, i, acEncoders[i]);
+            }
+            result.writeScanHeader(output);
+            writer.writeTo(output);
+            output.write(0xFF);
+            output.write(EOI);
+            return output.toByteArray();
+        }
+
+        private int estimateSize() {
+            int blocks = 0;
+            for (Component component : components) {
+                blocks += component.blocksWide * component.blocksHigh;
+            }
+            return blocks * 16;
+        }
+
+        /**
+         * Encode the blocks of this (transformed) image, taking them from their source through the
+         * mappings. Only gathers statistics if there is no writer.
+         */
+        private void encodeScan(BlockMapping[] mappings, HuffmanEncoder[] dcEncoders, HuffmanEncoder[] acEncoders, BitWriter writer) {
+            int[] predictions = new int[components.length];
+            short[] block = new short[64];
+            int mcusWide = getMcusWide();
+            int mcusHigh = getMcusHigh();
+            for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+                for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+                    for (int i = 0; i < components.length; i++) {
+                        Component component = components[i];
+                        HuffmanEncoder dc = dcEncoders[component.dcTable];
+                        HuffmanEncoder ac = acEncoders[component.acTable];
+                        for (int y = 0; y < component.v; y++) {
+                            for (int x = 0; x < component.h; x++) {
+                                mappings[i].getBlock(mcuX * component.h + x, mcuY * component.v + y, block);
+                                predictions[i] = encodeBlock(block, predictions[i], dc, ac, writer);
+                            }
+                        }
+                    }
+                }
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        private static int encodeBlock(short[] block, int prediction, HuffmanEncoder dc, HuffmanEncoder ac, BitWriter writer) {
+            int difference = block[0] - prediction;
+            int size = getCategory(difference);
+            dc.encode(size, writer);
+            if (writer != null && size > 0) {
+                writer.write(difference < 0 ? difference - 1 : difference, size);
+            }
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = block[ZIGZAG[k]];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    ac.encode(0xF0, writer);
+                    run -= 16;
+                }
+                size = getCategory(value);
+                ac.encode((run << 4) | size, writer);
+                if (writer != null) {
+                    writer.write(value < 0 ? value - 1 : value, size);
+                }
+                run = 0;
+            }
+            if (run > 0) {
+                // end of block
+                ac.encode(0x00, writer);
+            }
+            return block[0];
+        }
+
+        private void writeQuantTables(ByteArrayOutputStream output) {
+            for (int id = 0; id < 4; id++) {
+                int[] table = quantTables[id];
+                if (table == null) {
+                    continue;
+                }
+                int precision = quantPrecision[id];
+                writeMarker(output, DQT, 1 + 64 * (precision + 1));
+                output.write(precision << 4 | id);
+                for (int k = 0; k < 64; k++) {
+                    int value = table[ZIGZAG[k]];
+                    if (precision != 0) {
+                        output.write(value >> 8);
+                    }
+                    output.write(value & 0xff);
+                }
+            }
+        }
+
+        private void writeFrame(ByteArrayOutputStream output) {
+            writeMarker(output, sofMarker, 6 + components.length * 3);
+            output.write(8);
+            writeShort(output, height);
+            writeShort(output, width);
+            output.write(components.length);
+            for (Component component : components) {
+                output.write(component.id);
+                output.write(component.h << 4 | component.v);
+                output.write(component.quantTable);
+            }
+        }
+
+        private void writeScanHeader(ByteArrayOutputStream output) {
+            writeMarker(output, SOS, 4 + components.length * 2);
+            output.write(components.length);
+            for (Component component : components) {
+                output.write(component.id);
+                output.write(component.dcTable << 4 | component.acTable);
+            }
+            output.write(0);
+            output.write(63);
+            output.write(0);
+        }
+    }
+
+    /**
+     * Produces the blocks of a transformed component from the blocks of its source.
+     */
+    private static class BlockMapping {
+        private final Component _source;
+        private final Component _target;
+        private final boolean _transpose;
+        private final boolean _flipH;
+        private final boolean _flipV;
+        private final int[] _sourceIndex;
+        private final int[] _sign;
+
+        BlockMapping(Component source, Component target, boolean transpose, boolean flipH, boolean flipV, int[] sourceIndex, int[] sign) {
+            _source = source;
+            _target = target;
+            _transpose = transpose;
+            _flipH = flipH;
+            _flipV = flipV;
+            _sourceIndex = sourceIndex;
+            _sign = sign;
+        }
+
+        void getBlock(int x, int y, short[] block) {
+            // undo the flips, then the transpose
+            int transposedX = _flipH ? _target.blocksWide - 1 - x : x;
+            int transposedY = _flipV ? _target.blocksHigh - 1 - y : y;
+            int sourceX = _transpose ? transposedY : transposedX;
+            int sourceY = _transpose ? transposedX : transposedY;
+            int offset = (sourceY * _source.blocksWide + sourceX) * 64;
+            short[] coefficients = _source.coefficients;
+            for (int i = 0; i < 64; i++) {
+                block[i] = (short) (coefficients[offset + _sourceIndex[i]] * _sign[i]);
+            }
+        }
+    }
+
+    private static class HuffmanDecoder {
+        private static final int LOOKAHEAD_BITS = 9;
+
+        // (code length << 8) | symbol for every code of up to LOOKAHEAD_BITS bits, 0 for longer ones
+        private final int[] _lookahead = new int[1 << LOOKAHEAD_BITS];
+        private final int[] _maxCode = new int[18];
+        private final int[] _valueOffset = new int[17];
+        private final int[] _values;
+
+        HuffmanDecoder(int[] bits, int[] values) {
+            _values = values;
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                _valueOffset[length] = index - code;
+                for (int i = 0; i < bits[length]; i++, index++, code++) {
+                    if (length <= LOOKAHEAD_BITS) {
+                        int shift = LOOKAHEAD_BITS - length;
+                        for (int fill = 0; fill < 1 << shift; fill++) {
+                            _lookahead[(code << shift) | fill] = length << 8 | values[index];
+                        }
+                    }
+                }
+                _maxCode[length] = bits[length] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            _maxCode[17] = Integer.MAX_VALUE;
+        }
+
+        int decode(BitReader reader) throws UnsupportedJpegException {
+            int entry = _lookahead[reader.peek(LOOKAHEAD_BITS)];
+            if (entry != 0) {
+                reader.skip(entry >> 8);
+                return entry & 0xff;
+            }
+            int code = 0;
+            for (int length = 1; length <= 16; length++) {
+                code = (code << 1) | reader.getBits(1);
+                if (code <= _maxCode[length]) {
+                    return _values[_valueOffset[length] + code];
+                }
+            }
+            throw new UnsupportedJpegException("invalid huffman code");
+        }
+    }
+
+    /**
+     * Huffman table built from symbol frequencies, following section K.2 of the JPEG standard.
+     */
+    private static class HuffmanEncoder {
+        private final int[] _frequencies = new int[257];
+        private final int[] _codes = new int[256];
+        private final int[] _sizes = new int[256];
+        final int[] bits = new int[17];
+        int[] values;
+
+        void encode(int symbol, BitWriter writer) {
+            if (writer == null) {
+                _frequencies[symbol]++;
+            } else {
+                writer.write(_codes[symbol], _sizes[symbol]);
+            }
+        }
+
+        void buildTable() {
+            int[] frequencies = _frequencies.clone();
+            int[] codeSizes = new int[257];
+            int[] others = new int[257];
+            for (int i = 0; i < others.length; i++) {
+                others[i] = -1;
+            }
+            // reserved symbol, so no code is all ones
+            frequencies[256] = 1;
+            while (true) {
+                int c1 = -1;
+                long least = Long.MAX_VALUE;
+                for (int i = 0; i < 257; i++) {
+                    if (frequencies[i] != 0 && frequencies[i] <= least) {
+                        least = frequencies[i];
+                        c1 = i;
+                    }
+                }
+                int c2 = -1;
+                least = Long.MAX_VALUE;
+                for (int i = 0; i < 257; i++) {
+                    if (frequencies[i] != 0 && frequencies[i] <= least && i != c1) {
+                        least = frequencies[i];
+                        c2 = i;
+                    }
+                }
+                if (c2 < 0) {
+                    break;
+                }
+                frequencies[c1] += frequencies[c2];
+                frequencies[c2] = 0;
+                codeSizes[c1]++;
+                while (others[c1] >= 0) {
+                    c1 = others[c1];
+                    codeSizes[c1]++;
+                }
+                others[c1] = c2;
+                codeSizes[c2]++;
+                while (others[c2] >= 0) {
+                    c2 = others[c2];
+                    codeSizes[c2]++;
+                }
+            }
+
+            int[] counts = new int[33];
+            for (int i = 0; i < 257; i++) {
+                if (codeSizes[i] > 0) {
+                    counts[Math.min(codeSizes[i], 32)]++;
+                }
+            }
+            // limit code lengths to 16 bits
+            for (int i = 32; i > 16; i--) {
+                while (counts[i] > 0) {
+                    int j = i - 2;
+                    while (counts[j] == 0) {
+                        j--;
+                    }
+                    counts[i] -= 2;
+                    counts[i - 1]++;
+                    counts[j + 1] += 2;
+                    counts[j]--;
+                }
+            }
+            // drop the reserved symbol, which has the longest code
+            int longest = 16;
+            while (longest > 0 && counts[longest] == 0) {
+                longest--;
+            }
+            if (longest > 0) {
+                counts[longest]--;
+            }
+            System.arraycopy(counts, 0, bits, 0, 17);
+
+            List<Integer> sorted = new ArrayList<>();
+            for (int size = 1; size <= 32; size++) {
+                for (int symbol = 0; symbol < 256; symbol++) {
+                    if (codeSizes[symbol] == size) {
+                        sorted.add(symbol);
+                    }
+                }
+            }
+            int count = 0;
+            for (int length = 1; length <= 16; length++) {
+                count += bits[length];
+            }
+            values = new int[count];
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length]; i++, index++, code++) {
+                    int symbol = sorted.get(index);
+                    values[index] = symbol;
+                    _codes[symbol] = code;
+                    _sizes[symbol] = length;
+                }
+                code <<= 1;
+            }
+        }
+    }
+
+    private static class BitReader {
+        private final byte[] _data;
+        private int _position;
+        private long _buffer;
+        private int _bitCount;
+        // reached a marker, the rest of the segment reads as zeros
+        private boolean _atMarker;
+
+        BitReader(byte[] data, int position) {
+            _data = data;
+            _position = position;
+        }
+
+        int peek(int count) {
+            while (_bitCount < count) {
+                int b = 0;
+                if (!_atMarker && _position < _data.length) {
+                    b = _data[_position] & 0xff;
+                    if (b != 0xFF) {
+                        _position++;
+                    } else if (_position + 1 < _data.length && _data[_position + 1] == 0) {
+                        // stuffed zero byte
+                        _position += 2;
+                    } else {
+                        _atMarker = true;
+                        b = 0;
+                    }
+                }
+                _buffer = (_buffer << 8) | b;
+                _bitCount += 8;
+            }
+            return (int) (_buffer >>> (_bitCount - count)) & ((1 << count) - 1);
+        }
+
+        void skip(int count) {
+            _bitCount -= count;
+        }
+
+        int getBits(int count) {
+            if (count == 0) {
+                return 0;
+            }
+            int value = peek(count);
+            _bitCount -= count;
+            return value;
+        }
+
+        /**
+         * Drop the bits left in the current byte and step over the restart marker.
+         */
+        void restart() throws UnsupportedJpegException {
+            _buffer = 0;
+            _bitCount = 0;
+            _atMarker = false;
+            while (_position + 1 < _data.length) {
+                int b = _data[_position] & 0xff;
+                int next = _data[_position + 1] & 0xff;
+                if (b == 0xFF && next >= 0xD0 && next <= 0xD7) {
+                    _position += 2;
+                    return;
+                }
+                _position++;
+            }
+            throw new UnsupportedJpegException("missing restart marker");
+        }
+    }
+
+    private static class BitWriter {
+        private final ByteArrayOutputStream _output;
+        private int _buffer;
+        private int _bitCount;
+
+        BitWriter(int size) {
+            _output = new ByteArrayOutputStream(size);
+        }
+
+        void write(int value, int count) {
+            _buffer = (_buffer << count) | (value & ((1 << count) - 1));
+            _bitCount += count;
+            while (_bitCount >= 8) {
+                int b = (_buffer >> (_bitCount - 8)) & 0xff;
+                _output.write(b);
+                if (b == 0xFF) {
+                    _output.write(0);
+                }
+                _bitCount -= 8;
+            }
+            _buffer &= (1 << _bitCount) - 1;
+        }
+
+        void flush() {
+            if (_bitCount > 0) {
+                // pad with ones
+                write((1 << (8 - _bitCount)) - 1, 8 - _bitCount);
+            }
+        }
+
+        int size() {
+            return _output.size();
+        }
+
+        void writeTo(ByteArrayOutputStream output) {
+            byte[] bytes = _output.toByteArray();
+            output.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static int extend(int value, int size) {
+        return size == 0 || value >= 1 << (size - 1) ? value : value - (1 << size) + 1;
+    }
+
+    private static int getCategory(int value) {
+        return value == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    private static int[] transposeTable(int[] table) {
+        int[] transposed = new int[64];
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                transposed[column * 8 + row] = table[row * 8 + column];
+            }
+        }
+        return transposed;
+    }
+
+    private static void writeHuffmanTable(ByteArrayOutputStream output, int tableClass, int id, HuffmanEncoder encoder) {
+        writeMarker(output, DHT, 1 + 16 + encoder.values.length);
+        output.write(tableClass << 4 | id);
+        for (int length = 1; length <= 16; length++) {
+            output.write(encoder.bits[length]);
+        }
+        for (int value : encoder.values) {
+            output.write(value);
+        }
+    }
+
+    private static void writeMarker(ByteArrayOutputStream output, int marker, int payloadLength) {
+        output.write(0xFF);
+        output.write(marker);
+        writeShort(output, payloadLength + 2);
+    }
+
+    private static void writeShort(ByteArrayOutputStream output, int value) {
+        output.write(value >> 8);
+        output.write(value & 0xff);
+    }
+
+    private static int readUnsignedShort(byte[] data, int pos) {
+        return (data[pos] & 0xff) << 8 | (data[pos + 1] & 0xff);
+    }
+
+    /**
+     * A copy of an APP1 segment with its EXIF pixel dimensions set to the size of the transformed
+     * image, and its orientation set to 1 if asked to. Any other segment is returned as is.
+     */
+    private static byte[] rewriteExif(byte[] segment, boolean resetOrientation, int width, int height) {
+        // marker, length, "Exif\0\0", then the TIFF structure
+        int tiff = 10;
+        if ((segment[1] & 0xff) != 0xE1 || segment.length < tiff + 8
+                || segment[4] != 'E' || segment[5] != 'x' || segment[6] != 'i' || segment[7] != 'f') {
+            return segment;
+        }
+        byte[] copy = segment.clone();
+        boolean littleEndian = copy[tiff] == 'I';
+        int ifd = tiff + readInt(copy, tiff + 4, littleEndian);
+        int exifIfd = -1;
+        for (int entry : getIfdEntries(copy, tiff, ifd, littleEndian)) {
+            int tag = readShort(copy, entry, littleEndian);
+            int type = readShort(copy, entry + 2, littleEndian);
+            if (tag == EXIF_ORIENTATION_TAG && type == EXIF_TYPE_SHORT && resetOrientation) {
+                // a SHORT value sits in the first two bytes of the value field
+                writeShort(copy, entry + 8, 1, littleEndian);
+            } else if (tag == EXIF_IFD_POINTER_TAG && type == EXIF_TYPE_LONG) {
+                exifIfd = tiff + readInt(copy, entry + 8, littleEndian);
+            }
+        }
+        for (int entry : getIfdEntries(copy, tiff, exifIfd, littleEndian)) {
+            int tag = readShort(copy, entry, littleEndian);
+            if (tag == EXIF_PIXEL_X_DIMENSION_TAG) {
+                writeDimension(copy, entry, width, littleEndian);
+            } else if (tag == EXIF_PIXEL_Y_DIMENSION_TAG) {
+                writeDimension(copy, entry, height, littleEndian);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Offsets of the 12 byte entries of the IFD at the given offset, none if it is out of bounds.
+     */
+    private static int[] getIfdEntries(byte[] segment, int tiff, int ifd, boolean littleEndian) {
+        if (ifd < tiff || ifd + 2 > segment.length) {
+            return new int[0];
+        }
+        int count = Math.min(readShort(segment, ifd, littleEndian), (segment.length - ifd - 2) / 12);
+        int[] entries = new int[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = ifd + 2 + i * 12;
+        }
+        return entries;
+    }
+
+    private static void writeDimension(byte[] segment, int entry, int value, boolean littleEndian) {
+        int type = readShort(segment, entry + 2, littleEndian);
+        if (type == EXIF_TYPE_SHORT && value <= 0xffff) {
+            writeShort(segment, entry + 8, value, littleEndian);
+        } else if (type == EXIF_TYPE_LONG) {
+            writeShort(segment, entry + (littleEndian ? 8 : 10), value & 0xffff, littleEndian);
+            writeShort(segment, entry + (littleEndian ? 10 : 8), value >>> 16, littleEndian);
+        }
+    }
+
+    private static void writeShort(byte[] data, int pos, int value, boolean littleEndian) {
+        data[pos] = (byte) (littleEndian ? value : value >> 8);
+        data[pos + 1] = (byte) (littleEndian ? value >> 8 : value);
+    }
+
+    private static int readShort(byte[] data, int pos, boolean littleEndian) {
+        int b0 = data[pos] & 0xff;
+        int b1 = data[pos + 1] & 0xff;
+        return littleEndian ? b1 << 8 | b0 : b0 << 8 | b1;
+    }
+
+    private static int readInt(byte[] data, int pos, boolean littleEndian) {
+        return littleEndian
+                ? readShort(data, pos + 2, true) << 16 | readShort(data, pos, true)
+                : readShort(data, pos, false) << 16 | readShort(data, pos + 2, false);
+    }
+}
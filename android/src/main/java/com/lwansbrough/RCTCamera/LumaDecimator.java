@@ -0,0 +1,106 @@
+package com.lwansbrough.RCTCamera;
+
+import android.hardware.Camera;
+
+import java.util.ArrayDeque;
+
+/**
+ * Ingest stage between the camera and the frame analyzers. Copies just the luma plane of every
+ * preview frame into a pooled buffer, so the camera buffer can go straight back, optionally
+ * box-downscaled by an integer factor so its long edge fits a working resolution.
+ *
+ * Queued frames then hold two thirds of the memory of a full NV21 buffer, or a fraction of it when
+ * downscaled, the camera gets its buffers back as soon as the copy is made, and decoders work on
+ * far fewer pixels with 4K preview sizes. The luma buffers are recycled once the analyzers release
+ * the frame, and dropped when the frame size changes.
+ */
+class LumaDecimator implements PreviewFrame.Owner {
+    private int _maxLongEdge = 0;
+    private int _bufferSize = 0;
+    private final ArrayDeque<byte[]> _freeBuffers = new ArrayDeque<>();
+    // per column sums of the block row being averaged, only used on the camera thread
+    private int[] _sums = new int[0];
+
+    /**
+     * @param maxLongEdge longest edge of the copied frames, in pixels, 0 to copy them at full
+     * size.
+     */
+    public synchronized void setMaxLongEdge(int maxLongEdge) {
+        _maxLongEdge = Math.max(0, maxLongEdge);
+    }
+
+    /**
+     * Returns a copy of the frame's luma plane, downscaled if there is a maximum long edge. The
+     * caller releases the returned frame as well as the one it passed in, which it is free to do
+     * right away. Called on the camera thread.
+     */
+    public PreviewFrame decimate(PreviewFrame frame) {
+        int maxLongEdge;
+        synchronized (this) {
+            maxLongEdge = _maxLongEdge;
+        }
+
+        int factor = 1;
+        if (maxLongEdge > 0) {
+            factor = Math.max(1, (Math.max(frame.width, frame.height) + maxLongEdge - 1) / maxLongEdge);
+        }
+        int width = frame.width / factor;
+        int height = frame.height / factor;
+        byte[] buffer = obtainBuffer(width * height);
+        if (factor == 1) {
+            if (frame.rowStride == width) {
+                System.arraycopy(frame.data, 0, buffer, 0, width * height);
+            } else {
+                for (int y = 0; y < height; y++) {
+                    System.arraycopy(frame.data, y * frame.rowStride, buffer, y * width, width);
+                }
+            }
+        } else {
+            downscale(frame.data, frame.rowStride, buffer, width, height, factor);
+        }
+        return new PreviewFrame(buffer, width, height, width, frame.scale * factor, frame.rotation, frame.scanArea, frame.viewFinderGeometry, null, this);
+    }
+
+    @Override
+    public synchronized void release(byte[] buffer, Camera camera) {
+        if (buffer.length == _bufferSize) {
+            _freeBuffers.push(buffer);
+        }
+    }
+
+    private synchronized byte[] obtainBuffer(int size) {
+        if (size != _bufferSize) {
+            _freeBuffers.clear();
+            _bufferSize = size;
+        }
+        byte[] buffer = _freeBuffers.poll();
+        return buffer != null ? buffer : new byte[size];
+    }
+
+    private void downscale(byte[] source, int sourceRowStride, byte[] output, int width, int height, int factor) {
+        if (_sums.length < width) {
+            _sums = new int[width];
+        }
+        int[] sums = _sums;
+        int area = factor * factor;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                sums[x] = 0;
+            }
+            for (int blockY = 0; blockY < factor; blockY++) {
+                int offset = (y * factor + blockY) * sourceRowStride;
+                for (int x = 0; x < width; x++) {
+                    int sum = 0;
+                    for (int blockX = 0; blockX < factor; blockX++) {
+                        sum += source[offset++] & 0xff;
+                    }
+                    sums[x] += sum;
+                }
+            }
+            int outputOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                output[outputOffset + x] = (byte) (sums[x] / area);
+            }
+        }
+    }
+}
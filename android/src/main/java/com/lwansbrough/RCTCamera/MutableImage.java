@@ -2,7 +2,12 @@ package com.lwansbrough.RCTCamera;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.media.ExifInterface;
 import android.util.Base64;
 import android.util.Log;
@@ -27,34 +32,42 @@ public class MutableImage {
     private static final String TAG = "RNCamera";
 
     private final byte[] originalImageData;
+    // decoded on first use, a capture that needs no transform is never decoded
     private Bitmap currentRepresentation;
+    // transform that has been asked for but not applied to a bitmap yet: the orientation, as an
+    // exif orientation, then the crop, as fractions of the reoriented image, then the scale
+    private int pendingOrientation = 1;
+    private RectF pendingCrop;
+    // the only part of the original to decode, as fractions of it as stored, before any transform
+    private RectF region;
+    private float pendingScale = 1;
+    // limits applied on top of the pending scale, 0 for none
+    private int maxWidth = 0;
+    private int maxHeight = 0;
+    private Bitmap.Config pixelFormat = Bitmap.Config.ARGB_8888;
+    private int[] originalSize;
+    // the original with the pending transform applied losslessly, once it has been made
+    private byte[] transformedImageData;
+    private boolean losslessTransformFailed = false;
+    private boolean preserveEdges = false;
     private Metadata originalImageMetaData;
     private boolean hasBeenReoriented = false;
 
     public MutableImage(byte[] originalImageData) {
         this.originalImageData = originalImageData;
-        this.currentRepresentation = toBitmap(originalImageData);
     }
 
-    public void mirrorImage() throws ImageMutationFailedException {
-        Matrix m = new Matrix();
-
-        m.preScale(-1, 1);
-
-        Bitmap bitmap = Bitmap.createBitmap(
-                currentRepresentation,
-                0,
-                0,
-                currentRepresentation.getWidth(),
-                currentRepresentation.getHeight(),
-                m,
-                false
-        );
-
-        if (bitmap == null)
-            throw new ImageMutationFailedException("failed to mirror");
+    /**
+     * Mirroring and rotating are done losslessly on the JPEG's blocks when the image is kept at its
+     * original quality, which trims edges that are not a whole number of blocks. When preserving
+     * edges, such images go through a bitmap instead.
+     */
+    public void setPreserveEdges(boolean preserveEdges) {
+        this.preserveEdges = preserveEdges;
+    }
 
-        this.currentRepresentation = bitmap;
+    public void mirrorImage() throws ImageMutationFailedException {
+        transform(2);
     }
 
     public void fixOrientation() throws ImageMutationFailedException {
@@ -67,7 +80,8 @@ public class MutableImage {
             } else if (exifIFD0Directory.containsTag(ExifIFD0Directory.TAG_ORIENTATION)) {
                 int exifOrientation = exifIFD0Directory.getInt(ExifIFD0Directory.TAG_ORIENTATION);
                 if(exifOrientation != 1) {
-                    rotate(exifOrientation);
+                    transform(exifOrientation);
+                    this.hasBeenReoriented = true;
                     exifIFD0Directory.setInt(ExifIFD0Directory.TAG_ORIENTATION, 1);
                 }
             }
@@ -76,87 +90,402 @@ public class MutableImage {
         }
     }
 
-    //see http://www.impulseadventure.com/photo/exif-orientation.html
-    private void rotate(int exifOrientation) throws ImageMutationFailedException {
-        final Matrix bitmapMatrix = new Matrix();
+    /**
+     * Crop to a region of the image, given as fractions of its width and height.
+     */
+    public void crop(RectF region) {
+        RectF crop = new RectF(region);
+        if (!crop.intersect(0, 0, 1, 1) || crop.isEmpty()) {
+            return;
+        }
+        if (pendingCrop != null) {
+            crop.set(
+                    pendingCrop.left + crop.left * pendingCrop.width(),
+                    pendingCrop.top + crop.top * pendingCrop.height(),
+                    pendingCrop.left + crop.right * pendingCrop.width(),
+                    pendingCrop.top + crop.bottom * pendingCrop.height()
+            );
+        }
+        this.pendingCrop = crop;
+    }
+
+    /**
+     * Only decode a region of the picture, given as fractions of the camera sensor's frame. Any
+     * other transform applies to that region.
+     *
+     * @param pictureRotation the rotation the camera was asked to apply to the picture, which it
+     * either did to the pixels or left to the exif orientation.
+     */
+    public void setSensorRegion(RectF sensorRegion, int pictureRotation) {
+        // the pixels as stored are the sensor's frame rotated by what the exif orientation doesn't
+        Matrix matrix = new Matrix();
+        matrix.postRotate((pictureRotation - exifRotation() + 360) % 360, 0.5f, 0.5f);
+        RectF region = new RectF(sensorRegion);
+        matrix.mapRect(region);
+        if (!region.intersect(0, 0, 1, 1) || region.isEmpty() || (region.width() >= 1 && region.height() >= 1)) {
+            this.region = null;
+            return;
+        }
+        this.region = region;
+        this.transformedImageData = null;
+    }
+
+    /**
+     * The clockwise rotation of the original's exif orientation, mirroring aside.
+     */
+    private int exifRotation() {
+        try {
+            ExifIFD0Directory exifIFD0Directory = originalImageMetaData().getFirstDirectoryOfType(ExifIFD0Directory.class);
+            if (exifIFD0Directory == null || !exifIFD0Directory.containsTag(ExifIFD0Directory.TAG_ORIENTATION)) {
+                return 0;
+            }
+            switch (exifIFD0Directory.getInt(ExifIFD0Directory.TAG_ORIENTATION)) {
+                case 3:
+                case 4:
+                    return 180;
+                case 5:
+                case 6:
+                    return 90;
+                case 7:
+                case 8:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (ImageProcessingException | IOException | MetadataException e) {
+            Log.w(TAG, "failed to read the exif orientation", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Turn the region into the first crop, for when it can't be decoded on its own.
+     */
+    private void cropToRegion() {
+        RectF crop = new RectF(region);
+        orientationMatrix(pendingOrientation, 1, 1).mapRect(crop);
+        RectF then = pendingCrop;
+        this.pendingCrop = null;
+        this.region = null;
+        crop(crop);
+        if (then != null) {
+            crop(then);
+        }
+    }
+
+    public void scale(float factor) {
+        if (factor > 0) {
+            this.pendingScale *= factor;
+        }
+    }
+
+    /**
+     * Scale the image down, after any other transform, to at most this many pixels wide and high,
+     * 0 for no limit. The image is decoded at the smallest size that is still large enough.
+     */
+    public void setMaxSize(int maxWidth, int maxHeight) {
+        this.maxWidth = Math.max(0, maxWidth);
+        this.maxHeight = Math.max(0, maxHeight);
+    }
+
+    /**
+     * The config to decode the image to, if it has to be. RGB_565 takes half the memory.
+     */
+    public void setPixelFormat(Bitmap.Config pixelFormat) {
+        this.pixelFormat = pixelFormat;
+    }
+
+    /**
+     * Transforms are only recorded until the pixels are needed, so that they can be combined and
+     * applied in one go, losslessly if possible.
+     */
+    private void transform(int exifOrientation) {
+        if (exifOrientation < 1 || exifOrientation > 8) {
+            return;
+        }
+        if (pendingCrop != null) {
+            // the crop now happens before this transform, move it along
+            orientationMatrix(exifOrientation, 1, 1).mapRect(pendingCrop);
+        }
+        this.pendingOrientation = LosslessJpegTransformer.combine(pendingOrientation, exifOrientation);
+        this.transformedImageData = null;
+        this.losslessTransformFailed = false;
+    }
+
+    /**
+     * Maps a width x height image to its reoriented self.
+     * see http://www.impulseadventure.com/photo/exif-orientation.html
+     */
+    private static Matrix orientationMatrix(int exifOrientation, float width, float height) {
+        final Matrix matrix = new Matrix();
         switch (exifOrientation) {
-            case 1:
-                return;//no rotation required
             case 2:
-                bitmapMatrix.postScale(-1, 1);
+                matrix.postScale(-1, 1);
                 break;
             case 3:
-                bitmapMatrix.postRotate(180);
+                matrix.postRotate(180);
                 break;
             case 4:
-                bitmapMatrix.postRotate(180);
-                bitmapMatrix.postScale(-1, 1);
+                matrix.postRotate(180);
+                matrix.postScale(-1, 1);
                 break;
             case 5:
-                bitmapMatrix.postRotate(90);
-                bitmapMatrix.postScale(-1, 1);
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
                 break;
             case 6:
-                bitmapMatrix.postRotate(90);
+                matrix.postRotate(90);
                 break;
             case 7:
-                bitmapMatrix.postRotate(270);
-                bitmapMatrix.postScale(-1, 1);
+                matrix.postRotate(270);
+                matrix.postScale(-1, 1);
                 break;
             case 8:
-                bitmapMatrix.postRotate(270);
+                matrix.postRotate(270);
                 break;
             default:
                 break;
         }
+        // back to the origin
+        RectF bounds = new RectF(0, 0, width, height);
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        return matrix;
+    }
 
-        Bitmap transformedBitmap = Bitmap.createBitmap(
-                currentRepresentation,
-                0,
-                0,
-                currentRepresentation.getWidth(),
-                currentRepresentation.getHeight(),
-                bitmapMatrix,
-                false
+    /**
+     * The pending crop, in pixels of a width x height image once reoriented.
+     */
+    private Rect cropRect(int width, int height) {
+        boolean transposing = LosslessJpegTransformer.isTransposing(pendingOrientation);
+        int orientedWidth = transposing ? height : width;
+        int orientedHeight = transposing ? width : height;
+        if (pendingCrop == null) {
+            return new Rect(0, 0, orientedWidth, orientedHeight);
+        }
+        int left = Math.min(Math.round(pendingCrop.left * orientedWidth), orientedWidth - 1);
+        int top = Math.min(Math.round(pendingCrop.top * orientedHeight), orientedHeight - 1);
+        return new Rect(
+                left,
+                top,
+                Math.max(left + 1, Math.round(pendingCrop.right * orientedWidth)),
+                Math.max(top + 1, Math.round(pendingCrop.bottom * orientedHeight))
         );
+    }
+
+    /**
+     * The size the pending transform, scale and maximum size turn a width x height image into.
+     */
+    private int[] targetSize(int width, int height) {
+        Rect crop = cropRect(width, height);
+        float targetWidth = crop.width() * pendingScale;
+        float targetHeight = crop.height() * pendingScale;
+        float fit = 1;
+        if (maxWidth > 0 && targetWidth > maxWidth) {
+            fit = maxWidth / targetWidth;
+        }
+        if (maxHeight > 0 && targetHeight * fit > maxHeight) {
+            fit = maxHeight / targetHeight;
+        }
+        return new int[]{
+                Math.max(1, Math.round(targetWidth * fit)),
+                Math.max(1, Math.round(targetHeight * fit))
+        };
+    }
+
+    /**
+     * Draws the source reoriented, cropped and scaled to the target size with a single matrix, into
+     * the only bitmap allocated on the way. Returns the source itself if there is nothing to do.
+     */
+    private Bitmap applyPendingTransform(Bitmap source, int targetWidth, int targetHeight) {
+        Rect crop = cropRect(source.getWidth(), source.getHeight());
+        if (pendingOrientation == 1 && crop.width() == source.getWidth() && crop.height() == source.getHeight()
+                && targetWidth == crop.width() && targetHeight == crop.height()) {
+            return source;
+        }
+
+        Matrix matrix = orientationMatrix(pendingOrientation, source.getWidth(), source.getHeight());
+        matrix.postTranslate(-crop.left, -crop.top);
+        matrix.postScale(targetWidth / (float) crop.width(), targetHeight / (float) crop.height());
+
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap target = Bitmap.createBitmap(targetWidth, targetHeight, config);
+        new Canvas(target).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return target;
+    }
+
+    private Bitmap currentRepresentation() {
+        int[] targetSize = null;
+        if (currentRepresentation == null) {
+            BitmapRegionDecoder regionDecoder = null;
+            if (region != null) {
+                regionDecoder = newRegionDecoder();
+                if (regionDecoder == null || originalSize() == null) {
+                    cropToRegion();
+                }
+            }
+            try {
+                int[] originalSize = originalSize();
+                Rect regionRect = null;
+                int[] sourceSize = originalSize;
+                if (region != null) {
+                    int left = Math.min(Math.round(region.left * originalSize[0]), originalSize[0] - 1);
+                    int top = Math.min(Math.round(region.top * originalSize[1]), originalSize[1] - 1);
+                    regionRect = new Rect(
+                            left,
+                            top,
+                            Math.max(left + 1, Math.round(region.right * originalSize[0])),
+                            Math.max(top + 1, Math.round(region.bottom * originalSize[1]))
+                    );
+                    sourceSize = new int[]{regionRect.width(), regionRect.height()};
+                }
+                int sampleSize = 1;
+                if (sourceSize != null) {
+                    targetSize = targetSize(sourceSize[0], sourceSize[1]);
+                    Rect crop = cropRect(sourceSize[0], sourceSize[1]);
+                    // let the decoder do the bulk of a downscale, by the largest power of 2 that keeps
+                    // the image at least as large as the target, the transform does the rest
+                    while (crop.width() / (sampleSize * 2) >= targetSize[0] && crop.height() / (sampleSize * 2) >= targetSize[1]) {
+                        sampleSize *= 2;
+                    }
+                }
+                if (regionRect != null) {
+                    currentRepresentation = regionDecoder.decodeRegion(regionRect, decodeOptions(sampleSize, pixelFormat));
+                    if (currentRepresentation == null) {
+                        throw new IllegalStateException("failed to decode region " + regionRect);
+                    }
+                    region = null;
+                } else {
+                    currentRepresentation = toBitmap(originalImageData, sampleSize, pixelFormat);
+                }
+            } finally {
+                if (regionDecoder != null) {
+                    regionDecoder.recycle();
+                }
+            }
+        }
+        if (targetSize == null) {
+            targetSize = targetSize(currentRepresentation.getWidth(), currentRepresentation.getHeight());
+        }
 
-        if (transformedBitmap == null)
-            throw new ImageMutationFailedException("failed to rotate");
+        Bitmap transformed = applyPendingTransform(currentRepresentation, targetSize[0], targetSize[1]);
+        if (transformed != currentRepresentation) {
+            // don't wait for the gc to let go of a full size bitmap
+            currentRepresentation.recycle();
+            currentRepresentation = transformed;
+        }
+        pendingOrientation = 1;
+        pendingCrop = null;
+        pendingScale = 1;
+        transformedImageData = null;
+        return currentRepresentation;
+    }
 
-        this.currentRepresentation = transformedBitmap;
-        this.hasBeenReoriented = true;
+    /**
+     * The width and height of the original, read from its header, or null if it can't be.
+     */
+    private int[] originalSize() {
+        if (originalSize == null) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(originalImageData, 0, originalImageData.length, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            originalSize = new int[]{options.outWidth, options.outHeight};
+        }
+        return originalSize;
     }
 
-    private static Bitmap toBitmap(byte[] data) {
+    private BitmapRegionDecoder newRegionDecoder() {
         try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
-            Bitmap photo = BitmapFactory.decodeStream(inputStream);
-            inputStream.close();
-            return photo;
+            return BitmapRegionDecoder.newInstance(originalImageData, 0, originalImageData.length, false);
         } catch (IOException e) {
-            throw new IllegalStateException("Will not happen", e);
+            Log.w(TAG, "can't decode a region of the image, decoding all of it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Whether the pending transform changes the number of pixels of the original.
+     */
+    private boolean isResized() {
+        int[] size = originalSize();
+        if (size == null) {
+            return true;
         }
+        Rect crop = cropRect(size[0], size[1]);
+        int[] targetSize = targetSize(size[0], size[1]);
+        return targetSize[0] != crop.width() || targetSize[1] != crop.height();
+    }
+
+    /**
+     * The original JPEG with the pending transform applied losslessly, or null if it can't be.
+     */
+    private byte[] transformedImageData() {
+        if (region != null || pendingCrop != null || isResized()) {
+            return null;
+        }
+        if (pendingOrientation == 1) {
+            return originalImageData;
+        }
+        if (transformedImageData == null && !losslessTransformFailed) {
+            try {
+                transformedImageData = LosslessJpegTransformer.transform(originalImageData, pendingOrientation, !preserveEdges, hasBeenReoriented);
+            } catch (LosslessJpegTransformer.UnsupportedJpegException e) {
+                Log.w(TAG, "falling back to a bitmap transform: " + e.getMessage());
+                losslessTransformFailed = true;
+            }
+        }
+        return transformedImageData;
+    }
+
+    private static Bitmap toBitmap(byte[] data, int sampleSize, Bitmap.Config config) {
+        return BitmapFactory.decodeByteArray(data, 0, data.length, decodeOptions(sampleSize, config));
+    }
+
+    private static BitmapFactory.Options decodeOptions(int sampleSize, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        return options;
     }
 
-    public String toBase64(int jpegQualityPercent) {
-        return Base64.encodeToString(toJpeg(currentRepresentation, jpegQualityPercent), Base64.DEFAULT);
+    /**
+     * @param keepOriginal return the camera's JPEG as is, or losslessly transformed, rather than
+     * re-encoding it at the given quality.
+     */
+    public String toBase64(int jpegQualityPercent, boolean keepOriginal) {
+        return Base64.encodeToString(toJpeg(jpegQualityPercent, keepOriginal), Base64.DEFAULT);
     }
 
-    public void writeDataToFile(File file, ReadableMap options, int jpegQualityPercent) throws IOException {
+    /**
+     * @param keepOriginal write the camera's JPEG as is, or losslessly transformed, rather than
+     * re-encoding it at the given quality. Its exif data is then left intact.
+     */
+    public void writeDataToFile(File file, ReadableMap options, int jpegQualityPercent, boolean keepOriginal) throws IOException {
         FileOutputStream fos = new FileOutputStream(file);
-        fos.write(toJpeg(currentRepresentation, jpegQualityPercent));
+        fos.write(toJpeg(jpegQualityPercent, keepOriginal));
         fos.close();
+        // never decoded means never re-encoded
+        boolean original = currentRepresentation == null;
+
+        if (original && getLocationCoords(options) == null) {
+            return;
+        }
 
         try {
             ExifInterface exif = new ExifInterface(file.getAbsolutePath());
 
-            // copy original exif data to the output exif...
-            // unfortunately, this Android ExifInterface class doesn't understand all the tags so we lose some
-            for (Directory directory : originalImageMetaData().getDirectories()) {
-                for (Tag tag : directory.getTags()) {
-                    int tagType = tag.getTagType();
-                    Object object = directory.getObject(tagType);
-                    exif.setAttribute(tag.getTagName(), object.toString());
+            if (!original) {
+                // copy original exif data to the output exif...
+                // unfortunately, this Android ExifInterface class doesn't understand all the tags so we lose some
+                for (Directory directory : originalImageMetaData().getDirectories()) {
+                    for (Tag tag : directory.getTags()) {
+                        int tagType = tag.getTagType();
+                        Object object = directory.getObject(tagType);
+                        exif.setAttribute(tag.getTagName(), object.toString());
+                    }
                 }
             }
 
@@ -176,19 +505,11 @@ public class MutableImage {
     }
 
     private void writeLocationExifData(ReadableMap options, ExifInterface exif) {
-        if(!options.hasKey("metadata"))
-            return;
-
-        ReadableMap metadata = options.getMap("metadata");
-        if (!metadata.hasKey("location"))
-            return;
-
-        ReadableMap location = metadata.getMap("location");
-        if(!location.hasKey("coords"))
+        ReadableMap coords = getLocationCoords(options);
+        if (coords == null)
             return;
 
         try {
-            ReadableMap coords = location.getMap("coords");
             double latitude = coords.getDouble("latitude");
             double longitude = coords.getDouble("longitude");
 
@@ -198,6 +519,21 @@ public class MutableImage {
         }
     }
 
+    private static ReadableMap getLocationCoords(ReadableMap options) {
+        if(!options.hasKey("metadata"))
+            return null;
+
+        ReadableMap metadata = options.getMap("metadata");
+        if (!metadata.hasKey("location"))
+            return null;
+
+        ReadableMap location = metadata.getMap("location");
+        if(!location.hasKey("coords"))
+            return null;
+
+        return location.getMap("coords");
+    }
+
     private Metadata originalImageMetaData() throws ImageProcessingException, IOException {
         if(this.originalImageMetaData == null) {//this is expensive, don't do it more than once
             originalImageMetaData = ImageMetadataReader.readMetadata(
@@ -208,6 +544,16 @@ public class MutableImage {
         return originalImageMetaData;
     }
 
+    private byte[] toJpeg(int quality, boolean keepOriginal) throws OutOfMemoryError {
+        if (keepOriginal && currentRepresentation == null) {
+            byte[] jpeg = transformedImageData();
+            if (jpeg != null) {
+                return jpeg;
+            }
+        }
+        return toJpeg(currentRepresentation(), quality);
+    }
+
     private static byte[] toJpeg(Bitmap bitmap, int quality) throws OutOfMemoryError {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
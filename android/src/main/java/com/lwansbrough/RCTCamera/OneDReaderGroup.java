@@ -0,0 +1,144 @@
+package com.lwansbrough.RCTCamera;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.oned.CodaBarReader;
+import com.google.zxing.oned.Code128Reader;
+import com.google.zxing.oned.Code39Reader;
+import com.google.zxing.oned.Code93Reader;
+import com.google.zxing.oned.ITFReader;
+import com.google.zxing.oned.MultiFormatUPCEANReader;
+import com.google.zxing.oned.OneDReader;
+import com.google.zxing.oned.rss.RSS14Reader;
+import com.google.zxing.oned.rss.expanded.RSSExpandedReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The 1D readers for a set of formats, run over each sampled row in turn. Equivalent to ZXing's
+ * MultiFormatOneDReader, except that the order of the readers can be changed, see
+ * {@link #prioritize(FormatPriorities)}.
+ */
+final class OneDReaderGroup extends OneDReader {
+    public static final Set<BarcodeFormat> FORMATS = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E,
+            BarcodeFormat.EAN_13,
+            BarcodeFormat.EAN_8,
+            BarcodeFormat.UPC_EAN_EXTENSION,
+            BarcodeFormat.CODABAR,
+            BarcodeFormat.CODE_39,
+            BarcodeFormat.CODE_93,
+            BarcodeFormat.CODE_128,
+            BarcodeFormat.ITF,
+            BarcodeFormat.RSS_14,
+            BarcodeFormat.RSS_EXPANDED
+    ));
+    private static final Set<BarcodeFormat> UPC_EAN_FORMATS = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E,
+            BarcodeFormat.EAN_13,
+            BarcodeFormat.EAN_8,
+            BarcodeFormat.UPC_EAN_EXTENSION
+    ));
+
+    private final ReaderSlot<OneDReader>[] _slots;
+    private final Set<BarcodeFormat> _formats;
+
+    /**
+     * @param formats the formats to read, all 1D formats if empty.
+     */
+    @SuppressWarnings("unchecked")
+    OneDReaderGroup(Set<BarcodeFormat> formats, Map<DecodeHintType, ?> hints) {
+        boolean all = formats.isEmpty();
+        boolean useCode39CheckDigit = hints != null && hints.get(DecodeHintType.ASSUME_CODE_39_CHECK_DIGIT) != null;
+        List<ReaderSlot<OneDReader>> slots = new ArrayList<>();
+        // same order as MultiFormatOneDReader
+        if (all || containsAny(formats, UPC_EAN_FORMATS)) {
+            slots.add(new ReaderSlot<OneDReader>(new MultiFormatUPCEANReader(hints), UPC_EAN_FORMATS, slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.CODE_39)) {
+            slots.add(new ReaderSlot<OneDReader>(new Code39Reader(useCode39CheckDigit), EnumSet.of(BarcodeFormat.CODE_39), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.CODE_93)) {
+            slots.add(new ReaderSlot<OneDReader>(new Code93Reader(), EnumSet.of(BarcodeFormat.CODE_93), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.CODE_128)) {
+            slots.add(new ReaderSlot<OneDReader>(new Code128Reader(), EnumSet.of(BarcodeFormat.CODE_128), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.ITF)) {
+            slots.add(new ReaderSlot<OneDReader>(new ITFReader(), EnumSet.of(BarcodeFormat.ITF), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.CODABAR)) {
+            slots.add(new ReaderSlot<OneDReader>(new CodaBarReader(), EnumSet.of(BarcodeFormat.CODABAR), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.RSS_14)) {
+            slots.add(new ReaderSlot<OneDReader>(new RSS14Reader(), EnumSet.of(BarcodeFormat.RSS_14), slots.size()));
+        }
+        if (all || formats.contains(BarcodeFormat.RSS_EXPANDED)) {
+            slots.add(new ReaderSlot<OneDReader>(new RSSExpandedReader(), EnumSet.of(BarcodeFormat.RSS_EXPANDED), slots.size()));
+        }
+        _slots = slots.toArray(new ReaderSlot[slots.size()]);
+
+        EnumSet<BarcodeFormat> groupFormats = EnumSet.noneOf(BarcodeFormat.class);
+        for (ReaderSlot<OneDReader> slot : _slots) {
+            groupFormats.addAll(slot.formats);
+        }
+        _formats = Collections.unmodifiableSet(groupFormats);
+    }
+
+    /**
+     * Whether a plan for these formats needs any 1D reader at all.
+     */
+    public static boolean isNeededFor(Set<BarcodeFormat> formats) {
+        return formats.isEmpty() || containsAny(formats, FORMATS);
+    }
+
+    /**
+     * The formats covered by the readers of this group.
+     */
+    public Set<BarcodeFormat> getFormats() {
+        return _formats;
+    }
+
+    public void prioritize(FormatPriorities priorities) {
+        priorities.sort(_slots);
+    }
+
+    @Override
+    public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType, ?> hints) throws NotFoundException {
+        for (ReaderSlot<OneDReader> slot : _slots) {
+            try {
+                return slot.reader.decodeRow(rowNumber, row, hints);
+            } catch (ReaderException e) {
+                // try the next format
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    @Override
+    public void reset() {
+        for (ReaderSlot<OneDReader> slot : _slots) {
+            slot.reader.reset();
+        }
+    }
+
+    static boolean containsAny(Set<BarcodeFormat> formats, Set<BarcodeFormat> candidates) {
+        for (BarcodeFormat format : candidates) {
+            if (formats.contains(format)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
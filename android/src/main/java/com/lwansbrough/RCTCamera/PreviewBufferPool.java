@@ -0,0 +1,106 @@
+package com.lwansbrough.RCTCamera;
+
+import android.graphics.ImageFormat;
+import android.graphics.RectF;
+import android.hardware.Camera;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Fixed set of preview callback buffers shared with a {@link Camera} through
+ * {@link Camera#addCallbackBuffer(byte[])}.
+ *
+ * The camera fills one of our buffers for every preview frame instead of allocating a new byte[]
+ * per frame, so consumers must hand each buffer back with {@link #release(byte[], Camera)} once
+ * they are done reading it. While every buffer is checked out the camera simply skips frames.
+ *
+ * The camera drops its queued buffers whenever the preview callback is removed, so the pool must
+ * be detached at the same time and attached again with fresh buffers.
+ */
+class PreviewBufferPool implements PreviewFrame.Owner {
+    private Camera _camera;
+    private int _bufferSize;
+    private int _previewWidth;
+    private int _previewHeight;
+    private int _rowStride;
+    // buffers of the current session, arrays hash by identity
+    private final Set<byte[]> _buffers = new HashSet<>();
+
+    /**
+     * Allocate buffers sized for the camera's negotiated preview size and format and queue them
+     * on the camera. Must be called after the preview parameters are final.
+     *
+     * @param bufferCount number of buffers to share with the camera. Consumers holding on to
+     * frames should leave at least two buffers for the camera to fill.
+     */
+    public synchronized void attach(Camera camera, int bufferCount) {
+        _camera = camera;
+        Camera.Parameters parameters = camera.getParameters();
+        Camera.Size size = parameters.getPreviewSize();
+        _previewWidth = size.width;
+        _previewHeight = size.height;
+        _bufferSize = getBufferSize(size.width, size.height, parameters.getPreviewFormat());
+        _rowStride = getRowStride(size.width, parameters.getPreviewFormat());
+        _buffers.clear();
+        while (_buffers.size() < bufferCount) {
+            byte[] buffer = new byte[_bufferSize];
+            _buffers.add(buffer);
+            _camera.addCallbackBuffer(buffer);
+        }
+    }
+
+    public synchronized void detach() {
+        _camera = null;
+        _bufferSize = 0;
+        _buffers.clear();
+    }
+
+    /**
+     * Wrap a buffer the camera just filled. Returns null if the buffer does not belong to the
+     * current session, in which case it is simply dropped.
+     */
+    public synchronized PreviewFrame obtainFrame(byte[] buffer, Camera camera, int rotation, RectF scanArea, ViewFinderGeometry viewFinderGeometry) {
+        if (buffer == null || camera != _camera || !_buffers.contains(buffer)) {
+            return null;
+        }
+        return new PreviewFrame(buffer, _previewWidth, _previewHeight, _rowStride, 1, rotation, scanArea, viewFinderGeometry, camera, this);
+    }
+
+    /**
+     * Hand a buffer back to the camera it came from. Buffers from a previous session are dropped and
+     * left to the garbage collector.
+     */
+    @Override
+    public synchronized void release(byte[] buffer, Camera camera) {
+        if (buffer == null || camera != _camera || !_buffers.contains(buffer)) {
+            return;
+        }
+        try {
+            camera.addCallbackBuffer(buffer);
+        } catch (RuntimeException e) {
+            // camera was released underneath us
+            android.util.Log.w("RCTCamera", "failed to return preview buffer", e);
+        }
+    }
+
+    /**
+     * See https://developer.android.com/reference/android/hardware/Camera.Parameters.html#setPreviewFormat(int)
+     * for the YV12 stride requirements.
+     */
+    private static int getBufferSize(int width, int height, int format) {
+        if (format == ImageFormat.YV12) {
+            int yStride = getRowStride(width, format);
+            int uvStride = (int) Math.ceil((yStride / 2) / 16.0) * 16;
+            return yStride * height + uvStride * height;
+        }
+        return width * height * ImageFormat.getBitsPerPixel(format) / 8;
+    }
+
+    private static int getRowStride(int width, int format) {
+        if (format == ImageFormat.YV12) {
+            return (int) Math.ceil(width / 16.0) * 16;
+        }
+        return width;
+    }
+}
@@ -0,0 +1,78 @@
+package com.lwansbrough.RCTCamera;
+
+import android.graphics.RectF;
+import android.hardware.Camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A preview frame checked out of a {@link PreviewBufferPool}, or the copy of its luma plane made
+ * by a {@link LumaDecimator}. A frame can be shared by several consumers, each of which
+ * holds a reference taken with {@link #retain()} and gives it up with {@link #release()}. The
+ * buffer goes back to where it came from once the last reference is released.
+ *
+ * {@link #data} is NV21 or YV12 for camera frames, whose luma rows are {@link #rowStride} bytes
+ * apart, and only the tightly packed luma plane for the copies the analyzers get.
+ */
+public class PreviewFrame {
+    /**
+     * Where a frame's buffer goes once the frame is released.
+     */
+    interface Owner {
+        void release(byte[] buffer, Camera camera);
+    }
+
+    public final byte[] data;
+    public final int width;
+    public final int height;
+    // bytes from one luma row to the next, YV12 pads rows to a multiple of 16
+    public final int rowStride;
+    // how many camera pixels each pixel of this frame stands for, along each axis
+    public final int scale;
+    // clockwise rotation that brings the frame upright, in degrees
+    public final int rotation;
+    // region to decode, normalized to [0, 1] over the upright frame; null for the whole frame
+    public final RectF scanArea;
+    // where the viewfinder was laid out when the frame was captured, null if unknown
+    public final ViewFinderGeometry viewFinderGeometry;
+    // order in which the frame was picked up by a decoder, assigned by FrameMailbox
+    public long sequence;
+    private final Camera _camera;
+    private final Owner _owner;
+    private final AtomicInteger _references = new AtomicInteger(1);
+
+    PreviewFrame(byte[] data, int width, int height, int rowStride, int scale, int rotation, RectF scanArea, ViewFinderGeometry viewFinderGeometry, Camera camera, Owner owner) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.rowStride = rowStride;
+        this.scale = scale;
+        this.rotation = rotation;
+        this.scanArea = scanArea;
+        this.viewFinderGeometry = viewFinderGeometry;
+        this._camera = camera;
+        this._owner = owner;
+    }
+
+    public int getUprightWidth() {
+        return rotation % 180 == 0 ? width : height;
+    }
+
+    public int getUprightHeight() {
+        return rotation % 180 == 0 ? height : width;
+    }
+
+    /**
+     * Take another reference to the frame, to be given up with {@link #release()}.
+     */
+    public PreviewFrame retain() {
+        _references.incrementAndGet();
+        return this;
+    }
+
+    public void release() {
+        if (_references.decrementAndGet() == 0) {
+            _owner.release(data, _camera);
+        }
+    }
+}
@@ -4,8 +4,10 @@
 
 package com.lwansbrough.RCTCamera;
 
+import android.graphics.RectF;
 import android.hardware.Camera;
 import android.media.CamcorderProfile;
+import android.os.Process;
 import android.util.Log;
 
 import java.util.HashMap;
@@ -18,14 +20,34 @@ public class RCTCamera {
     private final HashMap<Integer, CameraInfoWrapper> _cameraInfos;
     private final HashMap<Integer, Integer> _cameraTypeToIndex;
     private final Map<Number, Camera> _cameras;
+    private final Map<Number, RCTCameraViewFinder> _viewFinders;
     private static final Resolution RESOLUTION_480P = new Resolution(853, 480); // 480p shoots for a 16:9 HD aspect ratio, but can otherwise fall back/down to any other supported camera sizes, such as 800x480 or 720x480, if (any) present. See getSupportedPictureSizes/getSupportedVideoSizes below.
     private static final Resolution RESOLUTION_720P = new Resolution(1280, 720);
     private static final Resolution RESOLUTION_1080P = new Resolution(1920, 1080);
     private boolean _barcodeScannerEnabled = false;
     private List<String> _barCodeTypes = null;
+    private int _barcodeScannerThreadPriority = Process.THREAD_PRIORITY_DEFAULT;
+    private int _barcodeDecoderPoolSize = 1;
+    private int _barcodeScannerTargetLatency = 0;
+    private float _barcodeScannerMaxCpu = 0;
+    private int _barcodeScannerChangeThreshold = 0;
+    private int _barcodeScannerEscalationFrames = 0;
+    private int _barcodeScannerDecodeBudget = 0;
+    private boolean _barcodeScannerTracking = false;
+    private boolean _barcodeScannerFormatLearning = false;
+    private boolean _barcodeScannerPersistFormatLearning = false;
+    private int _barcodeScannerScanlines = 0;
+    private boolean _barcodeScannerRaceFormats = false;
+    private int _barcodeScannerAnalysisSize = 0;
+    private int _barcodeScannerStatsInterval = 0;
+    private int _barCodeResultTtl = 0;
+    private int _barCodeMinRepeat = 1;
+    private int _barCodeCooldown = 0;
+    private boolean _barCodeMultiDecode = false;
     private int _orientation = -1;
     private int _actualDeviceOrientation = 0;
     private int _adjustedDeviceOrientation = 0;
+    private RectF _previewVisibleArea = null;
 
     public static RCTCamera getInstance() {
         return ourInstance;
@@ -48,6 +70,21 @@ public class RCTCamera {
         return _cameras.get(type);
     }
 
+    /**
+     * The view finder currently showing the preview of the camera, or null if none is.
+     */
+    public synchronized RCTCameraViewFinder getViewFinder(int type) {
+        return _viewFinders.get(type);
+    }
+
+    public synchronized void setViewFinder(int type, RCTCameraViewFinder viewFinder) {
+        if (viewFinder == null) {
+            _viewFinders.remove(type);
+        } else {
+            _viewFinders.put(type, viewFinder);
+        }
+    }
+
     public void releaseCameraInstance(int type) {
         // Release seems async and creates race conditions. Remove from map first before releasing.
         Camera releasingCamera = _cameras.get(type);
@@ -73,6 +110,42 @@ public class RCTCamera {
         return cameraInfo.previewHeight;
     }
 
+    /**
+     * Clockwise rotation, in degrees, that brings a preview frame of the given camera upright for
+     * the current device orientation.
+     */
+    public int getPreviewRotation(int type) {
+        CameraInfoWrapper cameraInfo = _cameraInfos.get(type);
+        if (null == cameraInfo) {
+            return 0;
+        }
+        return cameraInfo.rotation;
+    }
+
+    /**
+     * Like {@link #getPreviewRotation}, but for the orientation the preview was laid out for, which
+     * a capture doesn't change.
+     */
+    public int getPreviewLayoutRotation(int type) {
+        CameraInfoWrapper cameraInfo = _cameraInfos.get(type);
+        if (null == cameraInfo) {
+            return 0;
+        }
+        return getRotation(cameraInfo, _actualDeviceOrientation);
+    }
+
+    /**
+     * The part of the upright preview frame that is visible in the camera view, as fractions of
+     * the frame, or null if all of it is.
+     */
+    public RectF getPreviewVisibleArea() {
+        return _previewVisibleArea;
+    }
+
+    public void setPreviewVisibleArea(RectF previewVisibleArea) {
+        _previewVisibleArea = previewVisibleArea;
+    }
+
     public Camera.Size getBestSize(List<Camera.Size> supportedSizes, int maxWidth, int maxHeight) {
         Camera.Size bestSize = null;
         for (Camera.Size size : supportedSizes) {
@@ -176,6 +249,150 @@ public class RCTCamera {
         _barCodeTypes = barCodeTypes;
     }
 
+    public int getBarcodeScannerThreadPriority() {
+        return _barcodeScannerThreadPriority;
+    }
+
+    public void setBarcodeScannerThreadPriority(int priority) {
+        _barcodeScannerThreadPriority = priority;
+    }
+
+    public int getBarcodeDecoderPoolSize() {
+        return _barcodeDecoderPoolSize;
+    }
+
+    public void setBarcodeDecoderPoolSize(int poolSize) {
+        _barcodeDecoderPoolSize = Math.max(1, poolSize);
+    }
+
+    public int getBarcodeScannerTargetLatency() {
+        return _barcodeScannerTargetLatency;
+    }
+
+    public void setBarcodeScannerTargetLatency(int targetLatencyMs) {
+        _barcodeScannerTargetLatency = targetLatencyMs;
+    }
+
+    public float getBarcodeScannerMaxCpu() {
+        return _barcodeScannerMaxCpu;
+    }
+
+    public void setBarcodeScannerMaxCpu(float maxCpu) {
+        _barcodeScannerMaxCpu = maxCpu;
+    }
+
+    public int getBarcodeScannerChangeThreshold() {
+        return _barcodeScannerChangeThreshold;
+    }
+
+    public void setBarcodeScannerChangeThreshold(int threshold) {
+        _barcodeScannerChangeThreshold = threshold;
+    }
+
+    public int getBarcodeScannerEscalationFrames() {
+        return _barcodeScannerEscalationFrames;
+    }
+
+    public void setBarcodeScannerEscalationFrames(int escalationFrames) {
+        _barcodeScannerEscalationFrames = escalationFrames;
+    }
+
+    public int getBarcodeScannerDecodeBudget() {
+        return _barcodeScannerDecodeBudget;
+    }
+
+    public void setBarcodeScannerDecodeBudget(int decodeBudgetMs) {
+        _barcodeScannerDecodeBudget = decodeBudgetMs;
+    }
+
+    public boolean isBarcodeScannerTracking() {
+        return _barcodeScannerTracking;
+    }
+
+    public void setBarcodeScannerTracking(boolean tracking) {
+        _barcodeScannerTracking = tracking;
+    }
+
+    public boolean isBarcodeScannerFormatLearning() {
+        return _barcodeScannerFormatLearning;
+    }
+
+    public void setBarcodeScannerFormatLearning(boolean learning) {
+        _barcodeScannerFormatLearning = learning;
+    }
+
+    public boolean isBarcodeScannerPersistFormatLearning() {
+        return _barcodeScannerPersistFormatLearning;
+    }
+
+    public void setBarcodeScannerPersistFormatLearning(boolean persist) {
+        _barcodeScannerPersistFormatLearning = persist;
+    }
+
+    public int getBarcodeScannerScanlines() {
+        return _barcodeScannerScanlines;
+    }
+
+    public void setBarcodeScannerScanlines(int scanlines) {
+        _barcodeScannerScanlines = scanlines;
+    }
+
+    public boolean isBarcodeScannerRaceFormats() {
+        return _barcodeScannerRaceFormats;
+    }
+
+    public void setBarcodeScannerRaceFormats(boolean raceFormats) {
+        _barcodeScannerRaceFormats = raceFormats;
+    }
+
+    public int getBarcodeScannerAnalysisSize() {
+        return _barcodeScannerAnalysisSize;
+    }
+
+    public void setBarcodeScannerAnalysisSize(int analysisSize) {
+        _barcodeScannerAnalysisSize = analysisSize;
+    }
+
+    public int getBarcodeScannerStatsInterval() {
+        return _barcodeScannerStatsInterval;
+    }
+
+    public void setBarcodeScannerStatsInterval(int intervalMs) {
+        _barcodeScannerStatsInterval = intervalMs;
+    }
+
+    public int getBarCodeResultTtl() {
+        return _barCodeResultTtl;
+    }
+
+    public void setBarCodeResultTtl(int ttlMs) {
+        _barCodeResultTtl = ttlMs;
+    }
+
+    public int getBarCodeMinRepeat() {
+        return _barCodeMinRepeat;
+    }
+
+    public void setBarCodeMinRepeat(int minRepeat) {
+        _barCodeMinRepeat = minRepeat;
+    }
+
+    public int getBarCodeCooldown() {
+        return _barCodeCooldown;
+    }
+
+    public void setBarCodeCooldown(int cooldownMs) {
+        _barCodeCooldown = cooldownMs;
+    }
+
+    public boolean isBarCodeMultiDecode() {
+        return _barCodeMultiDecode;
+    }
+
+    public void setBarCodeMultiDecode(boolean multiDecode) {
+        _barCodeMultiDecode = multiDecode;
+    }
+
     public int getActualDeviceOrientation() {
         return _actualDeviceOrientation;
     }
@@ -310,6 +527,10 @@ public class RCTCamera {
             case RCTCameraModule.RCT_CAMERA_TORCH_MODE_OFF:
                 value = Camera.Parameters.FLASH_MODE_OFF;
                 break;
+            case RCTCameraModule.RCT_CAMERA_TORCH_MODE_AUTO:
+                // switched on and off with the brightness of the preview by the viewfinder's
+                // AutoTorchController, starting from whatever state the torch is in
+                return;
         }
 
         List<String> flashModes = parameters.getSupportedFlashModes();
@@ -352,14 +573,7 @@ public class RCTCamera {
         }
 
         CameraInfoWrapper cameraInfo = _cameraInfos.get(type);
-        int rotation;
-        int orientation = cameraInfo.info.orientation;
-        if (cameraInfo.info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            rotation = (orientation + deviceOrientation * 90) % 360;
-        } else {
-            rotation = (orientation - deviceOrientation * 90 + 360) % 360;
-        }
-        cameraInfo.rotation = rotation;
+        cameraInfo.rotation = getRotation(cameraInfo, deviceOrientation);
         Camera.Parameters parameters = camera.getParameters();
         parameters.setRotation(cameraInfo.rotation);
 
@@ -378,13 +592,11 @@ public class RCTCamera {
 
         CameraInfoWrapper cameraInfo = _cameraInfos.get(type);
         int displayRotation;
-        int rotation;
+        int rotation = getRotation(cameraInfo, _actualDeviceOrientation);
         int orientation = cameraInfo.info.orientation;
         if (cameraInfo.info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            rotation = (orientation + _actualDeviceOrientation * 90) % 360;
             displayRotation = (720 - orientation - _actualDeviceOrientation * 90) % 360;
         } else {
-            rotation = (orientation - _actualDeviceOrientation * 90 + 360) % 360;
             displayRotation = rotation;
         }
         cameraInfo.rotation = rotation;
@@ -420,6 +632,7 @@ public class RCTCamera {
 
     private RCTCamera(int deviceOrientation) {
         _cameras = new HashMap<>();
+        _viewFinders = new HashMap<>();
         _cameraInfos = new HashMap<>();
         _cameraTypeToIndex = new HashMap<>();
 
@@ -443,6 +656,14 @@ public class RCTCamera {
         }
     }
 
+    private static int getRotation(CameraInfoWrapper cameraInfo, int deviceOrientation) {
+        int orientation = cameraInfo.info.orientation;
+        if (cameraInfo.info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+            return (orientation + deviceOrientation * 90) % 360;
+        }
+        return (orientation - deviceOrientation * 90 + 360) % 360;
+    }
+
     private class CameraInfoWrapper {
         public final Camera.CameraInfo info;
         public int rotation = 0;
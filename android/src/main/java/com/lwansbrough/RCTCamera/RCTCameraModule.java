@@ -6,6 +6,9 @@
 package com.lwansbrough.RCTCamera;
 
 import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.RectF;
 import android.hardware.Camera;
 import android.media.*;
 import android.net.Uri;
@@ -525,18 +528,30 @@ public class RCTCameraModule extends ReactContextBaseJavaModule
         }
 
         RCTCamera.getInstance().adjustCameraRotationToDeviceOrientation(options.getInt("type"), deviceOrientation);
-        camera.setPreviewCallback(null);
+
+        final RectF sensorRegion = options.hasKey("cropToPreview") && options.getBoolean("cropToPreview")
+                ? getVisibleSensorRegion(options.getInt("type"))
+                : null;
+        final int pictureRotation = RCTCamera.getInstance().getPreviewRotation(options.getInt("type"));
+        final RCTCameraViewFinder viewFinder = RCTCamera.getInstance().getViewFinder(options.getInt("type"));
 
         Camera.PictureCallback captureCallback = new Camera.PictureCallback() {
             @Override
             public void onPictureTaken(final byte[] data, Camera camera) {
                 camera.stopPreview();
                 camera.startPreview();
+                if (viewFinder != null) {
+                    viewFinder.resumePreviewCallback();
+                }
 
                 AsyncTask.execute(new Runnable() {
                     @Override
                     public void run() {
-                        processImage(new MutableImage(data), options, promise);
+                        MutableImage mutableImage = new MutableImage(data);
+                        if (sensorRegion != null) {
+                            mutableImage.setSensorRegion(sensorRegion, pictureRotation);
+                        }
+                        processImage(mutableImage, options, promise);
                     }
                 });
 
@@ -545,20 +560,48 @@ public class RCTCameraModule extends ReactContextBaseJavaModule
         };
 
         if(mSafeToCapture) {
+          // no preview frames while the picture is taken, the callback is attached again after
+          // the preview restarts
+          if (viewFinder != null) {
+              viewFinder.pausePreviewCallback();
+          }
           try {
             camera.takePicture(null, null, captureCallback);
             mSafeToCapture = false;
           } catch(RuntimeException ex) {
               Log.e(TAG, "Couldn't capture photo.", ex);
+              if (viewFinder != null) {
+                  viewFinder.resumePreviewCallback();
+              }
           }
         }
     }
 
+    /**
+     * The part of the camera sensor's frame that is visible in the camera view, as fractions of the
+     * frame, or null if all of it is. This assumes that the picture shows what the preview does,
+     * whatever their sizes.
+     */
+    private RectF getVisibleSensorRegion(int type) {
+        RectF visibleArea = RCTCamera.getInstance().getPreviewVisibleArea();
+        if (visibleArea == null) {
+            return null;
+        }
+        // the upright preview frame is the sensor's frame rotated by the preview rotation
+        Matrix matrix = new Matrix();
+        matrix.postRotate(-RCTCamera.getInstance().getPreviewLayoutRotation(type), 0.5f, 0.5f);
+        RectF region = new RectF(visibleArea);
+        matrix.mapRect(region);
+        return region;
+    }
+
     /**
      * synchronized in order to prevent the user crashing the app by taking many photos and them all being processed
      * concurrently which would blow the memory (esp on smaller devices), and slow things down.
      */
     private synchronized void processImage(MutableImage mutableImage, ReadableMap options, Promise promise) {
+        mutableImage.setPreserveEdges(options.hasKey("preserveEdges") && options.getBoolean("preserveEdges"));
+
         boolean shouldFixOrientation = options.hasKey("fixOrientation") && options.getBoolean("fixOrientation");
         if(shouldFixOrientation) {
             try {
@@ -577,14 +620,34 @@ public class RCTCameraModule extends ReactContextBaseJavaModule
             }
         }
 
+        if (options.hasKey("crop")) {
+            ReadableMap crop = options.getMap("crop");
+            float x = (float) crop.getDouble("x");
+            float y = (float) crop.getDouble("y");
+            mutableImage.crop(new RectF(x, y, x + (float) crop.getDouble("width"), y + (float) crop.getDouble("height")));
+        }
+        if (options.hasKey("scale")) {
+            mutableImage.scale((float) options.getDouble("scale"));
+        }
+        mutableImage.setMaxSize(
+                options.hasKey("maxWidth") ? options.getInt("maxWidth") : 0,
+                options.hasKey("maxHeight") ? options.getInt("maxHeight") : 0
+        );
+        if (options.hasKey("pixelFormat") && "rgb565".equals(options.getString("pixelFormat"))) {
+            mutableImage.setPixelFormat(Bitmap.Config.RGB_565);
+        }
+
         int jpegQualityPercent = 80;
         if(options.hasKey("jpegQuality")) {
             jpegQualityPercent = options.getInt("jpegQuality");
         }
+        // if asked to, the image is kept as the camera encoded it, rotated and mirrored losslessly
+        // if need be, without decoding and re-encoding it
+        boolean keepOriginal = options.hasKey("keepOriginal") && options.getBoolean("keepOriginal");
 
         switch (options.getInt("target")) {
             case RCT_CAMERA_CAPTURE_TARGET_MEMORY:
-                String encoded = mutableImage.toBase64(jpegQualityPercent);
+                String encoded = mutableImage.toBase64(jpegQualityPercent, keepOriginal);
                 WritableMap response = new WritableNativeMap();
                 response.putString("data", encoded);
                 promise.resolve(response);
@@ -597,7 +660,7 @@ public class RCTCameraModule extends ReactContextBaseJavaModule
                 }
 
                 try {
-                    mutableImage.writeDataToFile(cameraRollFile, options, jpegQualityPercent);
+                    mutableImage.writeDataToFile(cameraRollFile, options, jpegQualityPercent, keepOriginal);
                 } catch (IOException e) {
                     promise.reject("failed to save image file", e);
                     return;
@@ -617,7 +680,7 @@ public class RCTCameraModule extends ReactContextBaseJavaModule
                 }
 
                 try {
-                    mutableImage.writeDataToFile(pictureFile, options, 85);
+                    mutableImage.writeDataToFile(pictureFile, options, 85, keepOriginal);
                 } catch (IOException e) {
                     promise.reject("failed to save image file", e);
                     return;
@@ -635,7 +698,7 @@ public class RCTCameraModule extends ReactContextBaseJavaModule
                 }
 
                 try {
-                    mutableImage.writeDataToFile(tempFile, options, 85);
+                    mutableImage.writeDataToFile(tempFile, options, 85, keepOriginal);
                 } catch (IOException e) {
                     promise.reject("failed to save image file", e);
                     return;
@@ -669,6 +732,11 @@ public class RCTCameraModule extends ReactContextBaseJavaModule
         promise.resolve(null != flashModes && !flashModes.isEmpty());
     }
 
+    @ReactMethod
+    public void getScannerStats(final Promise promise) {
+        promise.resolve(ScannerStats.getInstance().toMap());
+    }
+
     private File getOutputMediaFile(int type) {
         // Get environment directory type id from requested media type.
         String environmentDirectoryType;
@@ -69,4 +69,53 @@ public class RCTCameraUtils {
         focusAreaRect.round(focusAreaRectRounded);
         return new Camera.Area(focusAreaRectRounded, FOCUS_AREA_WEIGHT);
     }
+
+    /**
+     * Maps a scan area given in the coordinate system of the camera view into a rectangle
+     * normalized to [0, 1] over the upright preview frame, i.e. the frame after it has been rotated
+     * by the camera's preview rotation.
+     *
+     * The viewfinder shows the upright frame scaled to its own bounds, which may extend past the
+     * camera view for aspect fill, and mirrored for front facing cameras. Returns null if the scan
+     * area does not overlap the viewfinder at all.
+     */
+    protected static RectF computeNormalizedScanArea(final RectF scanArea, final int viewFinderLeft, final int viewFinderTop, final int viewFinderWidth, final int viewFinderHeight, final boolean mirrored) {
+        if (viewFinderWidth <= 0 || viewFinderHeight <= 0) {
+            return null;
+        }
+        final RectF normalized = new RectF(
+                (scanArea.left - viewFinderLeft) / viewFinderWidth, // left
+                (scanArea.top - viewFinderTop) / viewFinderHeight, // top
+                (scanArea.right - viewFinderLeft) / viewFinderWidth, // right
+                (scanArea.bottom - viewFinderTop) / viewFinderHeight // bottom
+        );
+        if (mirrored) {
+            final float left = normalized.left;
+            normalized.left = 1 - normalized.right;
+            normalized.right = 1 - left;
+        }
+        if (!normalized.intersect(0, 0, 1, 1)) {
+            return null;
+        }
+        return normalized;
+    }
+
+    /**
+     * The inverse of {@link #computeNormalizedScanArea}: maps a rectangle normalized over the
+     * upright preview frame back into the coordinate system of the camera view.
+     */
+    protected static RectF computeViewRect(final RectF normalized, final int viewFinderLeft, final int viewFinderTop, final int viewFinderWidth, final int viewFinderHeight, final boolean mirrored) {
+        float left = normalized.left;
+        float right = normalized.right;
+        if (mirrored) {
+            left = 1 - normalized.right;
+            right = 1 - normalized.left;
+        }
+        return new RectF(
+                viewFinderLeft + left * viewFinderWidth, // left
+                viewFinderTop + normalized.top * viewFinderHeight, // top
+                viewFinderLeft + right * viewFinderWidth, // right
+                viewFinderTop + normalized.bottom * viewFinderHeight // bottom
+        );
+    }
 }
@@ -5,6 +5,7 @@
 package com.lwansbrough.RCTCamera;
 
 import android.content.Context;
+import android.graphics.RectF;
 import android.hardware.SensorManager;
 import android.view.OrientationEventListener;
 import android.view.ViewGroup;
@@ -23,6 +24,8 @@ public class RCTCameraView extends ViewGroup {
     private String _captureQuality = "high";
     private int _torchMode = -1;
     private int _flashMode = -1;
+    private RectF _scanArea = null;
+    private final FrameProcessorRegistry _frameProcessors = new FrameProcessorRegistry();
 
     public RCTCameraView(Context context) {
         super(context);
@@ -69,13 +72,14 @@ public class RCTCameraView extends ViewGroup {
             this._viewFinder.setCameraType(type);
             RCTCamera.getInstance().adjustPreviewLayout(type);
         } else {
-            _viewFinder = new RCTCameraViewFinder(_context, type);
+            _viewFinder = new RCTCameraViewFinder(_context, type, _frameProcessors);
             if (-1 != this._flashMode) {
                 _viewFinder.setFlashMode(this._flashMode);
             }
             if (-1 != this._torchMode) {
                 _viewFinder.setTorchMode(this._torchMode);
             }
+            _viewFinder.setScanArea(this._scanArea);
             addView(_viewFinder);
         }
     }
@@ -117,10 +121,178 @@ public class RCTCameraView extends ViewGroup {
 
     public void setBarcodeScannerEnabled(boolean barcodeScannerEnabled) {
         RCTCamera.getInstance().setBarcodeScannerEnabled(barcodeScannerEnabled);
+        if (this._viewFinder != null) {
+            this._viewFinder.updatePreviewCallback();
+        }
+    }
+
+    /**
+     * Start handing preview frames to the given processor, at most maxFrameRate of them per second
+     * (0 for all of them). Adding a processor again only changes its frame rate.
+     */
+    public void addFrameProcessor(FrameProcessor processor, float maxFrameRate) {
+        _frameProcessors.add(processor, maxFrameRate);
+        if (this._viewFinder != null) {
+            this._viewFinder.updatePreviewCallback();
+        }
+    }
+
+    public void removeFrameProcessor(FrameProcessor processor) {
+        _frameProcessors.remove(processor);
+        if (this._viewFinder != null) {
+            this._viewFinder.updatePreviewCallback();
+        }
+    }
+
+    public void setBarcodeScannerThreadPriority(int priority) {
+        RCTCamera.getInstance().setBarcodeScannerThreadPriority(priority);
+    }
+
+    public void setBarcodeDecoderPoolSize(int poolSize) {
+        RCTCamera.getInstance().setBarcodeDecoderPoolSize(poolSize);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeDecoderPoolSize(poolSize);
+        }
+    }
+
+    public void setBarcodeScannerTargetLatency(int targetLatencyMs) {
+        RCTCamera.getInstance().setBarcodeScannerTargetLatency(targetLatencyMs);
+        applyBarcodeScannerBudgets();
+    }
+
+    public void setBarcodeScannerMaxCpu(float maxCpu) {
+        RCTCamera.getInstance().setBarcodeScannerMaxCpu(maxCpu);
+        applyBarcodeScannerBudgets();
+    }
+
+    private void applyBarcodeScannerBudgets() {
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerBudgets(
+                    RCTCamera.getInstance().getBarcodeScannerTargetLatency(),
+                    RCTCamera.getInstance().getBarcodeScannerMaxCpu()
+            );
+        }
+    }
+
+    public void setBarcodeScannerChangeThreshold(int threshold) {
+        RCTCamera.getInstance().setBarcodeScannerChangeThreshold(threshold);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerChangeThreshold(threshold);
+        }
+    }
+
+    public void setBarcodeScannerEscalationFrames(int escalationFrames) {
+        RCTCamera.getInstance().setBarcodeScannerEscalationFrames(escalationFrames);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerEscalationFrames(escalationFrames);
+        }
+    }
+
+    public void setBarcodeScannerDecodeBudget(int decodeBudgetMs) {
+        RCTCamera.getInstance().setBarcodeScannerDecodeBudget(decodeBudgetMs);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerDecodeBudget(decodeBudgetMs);
+        }
+    }
+
+    public void setBarcodeScannerTracking(boolean tracking) {
+        RCTCamera.getInstance().setBarcodeScannerTracking(tracking);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerTracking(tracking);
+        }
+    }
+
+    public void setBarcodeScannerFormatLearning(boolean learning) {
+        RCTCamera.getInstance().setBarcodeScannerFormatLearning(learning);
+        applyBarcodeScannerFormatLearning();
+    }
+
+    public void setBarcodeScannerPersistFormatLearning(boolean persist) {
+        RCTCamera.getInstance().setBarcodeScannerPersistFormatLearning(persist);
+        applyBarcodeScannerFormatLearning();
+    }
+
+    public void setBarcodeScannerScanlines(int scanlines) {
+        RCTCamera.getInstance().setBarcodeScannerScanlines(scanlines);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerScanlines(scanlines);
+        }
+    }
+
+    public void setBarcodeScannerRaceFormats(boolean raceFormats) {
+        RCTCamera.getInstance().setBarcodeScannerRaceFormats(raceFormats);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerRaceFormats(raceFormats);
+        }
+    }
+
+    public void setBarcodeScannerAnalysisSize(int analysisSize) {
+        RCTCamera.getInstance().setBarcodeScannerAnalysisSize(analysisSize);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerAnalysisSize(analysisSize);
+        }
+    }
+
+    public void setBarcodeScannerStatsInterval(int intervalMs) {
+        RCTCamera.getInstance().setBarcodeScannerStatsInterval(intervalMs);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerStatsInterval(intervalMs);
+        }
+    }
+
+    private void applyBarcodeScannerFormatLearning() {
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarcodeScannerFormatLearning(
+                    RCTCamera.getInstance().isBarcodeScannerFormatLearning(),
+                    RCTCamera.getInstance().isBarcodeScannerPersistFormatLearning()
+            );
+        }
+    }
+
+    public void setBarCodeResultTtl(int ttlMs) {
+        RCTCamera.getInstance().setBarCodeResultTtl(ttlMs);
+        applyBarCodeResultPolicy();
+    }
+
+    public void setBarCodeMinRepeat(int minRepeat) {
+        RCTCamera.getInstance().setBarCodeMinRepeat(minRepeat);
+        applyBarCodeResultPolicy();
+    }
+
+    public void setBarCodeCooldown(int cooldownMs) {
+        RCTCamera.getInstance().setBarCodeCooldown(cooldownMs);
+        applyBarCodeResultPolicy();
+    }
+
+    private void applyBarCodeResultPolicy() {
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarCodeResultPolicy(
+                    RCTCamera.getInstance().getBarCodeResultTtl(),
+                    RCTCamera.getInstance().getBarCodeMinRepeat(),
+                    RCTCamera.getInstance().getBarCodeCooldown()
+            );
+        }
+    }
+
+    public void setBarCodeMultiDecode(boolean multiDecode) {
+        RCTCamera.getInstance().setBarCodeMultiDecode(multiDecode);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarCodeMultiDecode(multiDecode);
+        }
+    }
+
+    public void setScanArea(RectF scanArea) {
+        this._scanArea = scanArea;
+        if (this._viewFinder != null) {
+            this._viewFinder.setScanArea(scanArea);
+        }
     }
 
     public void setBarCodeTypes(List<String> types) {
         RCTCamera.getInstance().setBarCodeTypes(types);
+        if (this._viewFinder != null) {
+            this._viewFinder.setBarCodeTypes(types);
+        }
     }
 
     private boolean setActualDeviceOrientation(Context context) {
@@ -181,6 +353,13 @@ public class RCTCameraView extends ViewGroup {
         int viewFinderPaddingY = (int) ((height - viewfinderHeight) / 2);
 
         this._viewFinder.layout(viewFinderPaddingX, viewFinderPaddingY, viewFinderPaddingX + viewfinderWidth, viewFinderPaddingY + viewfinderHeight);
+        // for aspect fill, the viewfinder is cut off by the view, remember what is left of it for
+        // captures cropped to the preview. It is centered, so mirroring doesn't matter.
+        RectF visibleArea = RCTCameraUtils.computeNormalizedScanArea(new RectF(0, 0, width, height), viewFinderPaddingX, viewFinderPaddingY, viewfinderWidth, viewfinderHeight, false);
+        if (visibleArea != null && visibleArea.width() >= 1 && visibleArea.height() >= 1) {
+            visibleArea = null;
+        }
+        RCTCamera.getInstance().setPreviewVisibleArea(visibleArea);
         this.postInvalidate(this.getLeft(), this.getTop(), this.getRight(), this.getBottom());
     }
 }
@@ -6,29 +6,14 @@ package com.lwansbrough.RCTCamera;
 
 import android.content.Context;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.view.MotionEvent;
 import android.view.TextureView;
-import android.os.AsyncTask;
-
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.ReactContext;
-import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.EnumMap;
-import java.util.EnumSet;
-
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
 
 class RCTCameraViewFinder extends TextureView implements TextureView.SurfaceTextureListener, Camera.PreviewCallback {
     private int _cameraType;
@@ -40,18 +25,54 @@ class RCTCameraViewFinder extends TextureView implements TextureView.SurfaceText
     private boolean _isStopping;
     private Camera _camera;
     private float mFingerSpacing;
+    // barcode scan area in the parent camera view's coordinates, in pixels; null for the whole frame
+    private RectF _scanArea;
+
+    // last known layout, handed out with every preview frame
+    private ViewFinderGeometry _viewFinderGeometry;
+
+    // decodes barcodes off the camera thread, one frame at a time
+    private final BarcodeScanner _barcodeScanner;
+
+    // paces the frames offered to the barcode scanner
+    private final ScanRateGovernor _scanRateGovernor = new ScanRateGovernor();
+
+    // skips decoding frames of a scene that has not changed since the last decode
+    private final FrameChangeDetector _frameChangeDetector = new FrameChangeDetector();
+
+    // buffers shared with the camera: one being filled, one queued behind it and one being copied
+    // in `onPreviewFrame`. The analyzers only hold on to the luma copies, never to these.
+    private static final int PREVIEW_BUFFER_COUNT = 3;
+
+    // preview callback buffers, handed back to the camera as soon as their luma is copied
+    private final PreviewBufferPool _previewBufferPool = new PreviewBufferPool();
+    private final LumaDecimator _lumaDecimator = new LumaDecimator();
+
+    // analyzers registered by other packages, owned by the parent camera view
+    private final FrameProcessorRegistry _frameProcessors;
+
+    // whether `onPreviewFrame` is currently registered with the camera
+    private boolean _isPreviewCallbackAttached;
+
+    // whether a picture is being taken, during which the preview callback stays detached
+    private boolean _isPreviewCallbackPaused;
 
-    // concurrency lock for barcode scanner to avoid flooding the runtime
-    public static volatile boolean barcodeScannerTaskLock = false;
+    // whether the last preview frame went to an enabled barcode scanner, reset when the camera starts
+    private boolean _isScanning;
 
-    // reader instance for the barcode scanner
-    private final MultiFormatReader _multiFormatReader = new MultiFormatReader();
+    // periodically sends the scanner stats to JS
+    private final ScannerStatsReporter _scannerStatsReporter = new ScannerStatsReporter();
 
-    public RCTCameraViewFinder(Context context, int type) {
+    // switches the torch with the brightness of the preview in auto torch mode
+    private final AutoTorchController _autoTorch;
+
+    public RCTCameraViewFinder(Context context, int type, FrameProcessorRegistry frameProcessors) {
         super(context);
         this.setSurfaceTextureListener(this);
         this._cameraType = type;
-        this.initBarcodeReader(RCTCamera.getInstance().getBarCodeTypes());
+        this._frameProcessors = frameProcessors;
+        this._barcodeScanner = new BarcodeScanner(RCTCamera.getInstance().getBarCodeTypes(), _scanRateGovernor);
+        this._autoTorch = new AutoTorchController(_barcodeScanner);
     }
 
     @Override
@@ -112,12 +133,80 @@ class RCTCameraViewFinder extends TextureView implements TextureView.SurfaceText
 
     public void setTorchMode(int torchMode) {
         RCTCamera.getInstance().setTorchMode(_cameraType, torchMode);
+        // auto mode samples the preview, which needs the preview callback
+        if (torchMode == RCTCameraModule.RCT_CAMERA_TORCH_MODE_AUTO) {
+            _autoTorch.reset();
+            _frameProcessors.add(_autoTorch, AutoTorchController.FRAME_RATE);
+        } else {
+            _frameProcessors.remove(_autoTorch);
+        }
+        updatePreviewCallback();
     }
 
     public void setFlashMode(int flashMode) {
         RCTCamera.getInstance().setFlashMode(_cameraType, flashMode);
     }
 
+    public void setBarcodeDecoderPoolSize(int poolSize) {
+        _barcodeScanner.setPoolSize(poolSize);
+    }
+
+    public void setBarcodeScannerBudgets(int targetLatencyMs, float maxCpu) {
+        _scanRateGovernor.setBudgets(targetLatencyMs, maxCpu);
+    }
+
+    public void setBarcodeScannerChangeThreshold(int threshold) {
+        _frameChangeDetector.setThreshold(threshold);
+    }
+
+    public void setBarcodeScannerEscalationFrames(int escalationFrames) {
+        _barcodeScanner.setEscalationFrames(escalationFrames);
+    }
+
+    public void setBarcodeScannerDecodeBudget(int decodeBudgetMs) {
+        _barcodeScanner.setDecodeBudget(decodeBudgetMs);
+    }
+
+    public void setBarcodeScannerTracking(boolean tracking) {
+        _barcodeScanner.setTracking(tracking);
+    }
+
+    public void setBarcodeScannerFormatLearning(boolean learning, boolean persist) {
+        _barcodeScanner.setFormatLearning(learning, persist);
+    }
+
+    public void setBarcodeScannerScanlines(int scanlines) {
+        _barcodeScanner.setScanlines(scanlines);
+    }
+
+    public void setBarcodeScannerRaceFormats(boolean raceFormats) {
+        _barcodeScanner.setRacing(raceFormats);
+    }
+
+    public void setBarcodeScannerStatsInterval(int intervalMs) {
+        _scannerStatsReporter.setInterval(intervalMs);
+    }
+
+    public void setBarcodeScannerAnalysisSize(int analysisSize) {
+        _lumaDecimator.setMaxLongEdge(analysisSize);
+    }
+
+    public void setBarCodeResultPolicy(long ttlMs, int minRepeat, long cooldownMs) {
+        _barcodeScanner.setResultPolicy(ttlMs, minRepeat, cooldownMs);
+    }
+
+    public void setBarCodeMultiDecode(boolean multiDecode) {
+        _barcodeScanner.setMultiDecode(multiDecode);
+    }
+
+    public void setBarCodeTypes(List<String> barCodeTypes) {
+        _barcodeScanner.setBarCodeTypes(barCodeTypes);
+    }
+
+    public void setScanArea(RectF scanArea) {
+        this._scanArea = scanArea;
+    }
+
     private void startPreview() {
         if (_surfaceTexture != null) {
             startCamera();
@@ -174,8 +263,49 @@ class RCTCameraViewFinder extends TextureView implements TextureView.SurfaceText
                 _camera.setParameters(parameters);
                 _camera.setPreviewTexture(_surfaceTexture);
                 _camera.startPreview();
-                // send previews to `onPreviewFrame`
-                _camera.setPreviewCallback(this);
+                int decoderPoolSize = RCTCamera.getInstance().getBarcodeDecoderPoolSize();
+                _barcodeScanner.setPoolSize(decoderPoolSize);
+                _barcodeScanner.start();
+                _scanRateGovernor.attach(_camera);
+                _scanRateGovernor.setBudgets(
+                        RCTCamera.getInstance().getBarcodeScannerTargetLatency(),
+                        RCTCamera.getInstance().getBarcodeScannerMaxCpu()
+                );
+                _barcodeScanner.setResultPolicy(
+                        RCTCamera.getInstance().getBarCodeResultTtl(),
+                        RCTCamera.getInstance().getBarCodeMinRepeat(),
+                        RCTCamera.getInstance().getBarCodeCooldown()
+                );
+                _barcodeScanner.setMultiDecode(RCTCamera.getInstance().isBarCodeMultiDecode());
+                _barcodeScanner.setEscalationFrames(RCTCamera.getInstance().getBarcodeScannerEscalationFrames());
+                _barcodeScanner.setDecodeBudget(RCTCamera.getInstance().getBarcodeScannerDecodeBudget());
+                _barcodeScanner.setTracking(RCTCamera.getInstance().isBarcodeScannerTracking());
+                _barcodeScanner.setFormatLearning(
+                        RCTCamera.getInstance().isBarcodeScannerFormatLearning(),
+                        RCTCamera.getInstance().isBarcodeScannerPersistFormatLearning()
+                );
+                _barcodeScanner.setScanlines(RCTCamera.getInstance().getBarcodeScannerScanlines());
+                _barcodeScanner.setRacing(RCTCamera.getInstance().isBarcodeScannerRaceFormats());
+                _lumaDecimator.setMaxLongEdge(RCTCamera.getInstance().getBarcodeScannerAnalysisSize());
+                _scannerStatsReporter.setInterval(RCTCamera.getInstance().getBarcodeScannerStatsInterval());
+                _scannerStatsReporter.start();
+                _autoTorch.attach(_camera);
+                _isScanning = false;
+                _frameChangeDetector.setThreshold(RCTCamera.getInstance().getBarcodeScannerChangeThreshold());
+                _frameChangeDetector.invalidate();
+                // a frame that just came into focus is worth decoding even if the scene is the same
+                _camera.setAutoFocusMoveCallback(new Camera.AutoFocusMoveCallback() {
+                    @Override
+                    public void onAutoFocusMoving(boolean start, Camera camera) {
+                        if (!start) {
+                            _frameChangeDetector.invalidate();
+                        }
+                    }
+                });
+                _isPreviewCallbackAttached = false;
+                _isPreviewCallbackPaused = false;
+                updatePreviewCallback();
+                RCTCamera.getInstance().setViewFinder(_cameraType, this);
             } catch (NullPointerException e) {
                 e.printStackTrace();
             } catch (Exception e) {
@@ -194,7 +324,16 @@ class RCTCameraViewFinder extends TextureView implements TextureView.SurfaceText
                 if (_camera != null) {
                     _camera.stopPreview();
                     // stop sending previews to `onPreviewFrame`
-                    _camera.setPreviewCallback(null);
+                    _camera.setPreviewCallbackWithBuffer(null);
+                    _isPreviewCallbackAttached = false;
+                    _previewBufferPool.detach();
+                    _scanRateGovernor.detach();
+                    _scannerStatsReporter.stop();
+                    _autoTorch.detach();
+                    _barcodeScanner.stop();
+                    if (RCTCamera.getInstance().getViewFinder(_cameraType) == this) {
+                        RCTCamera.getInstance().setViewFinder(_cameraType, null);
+                    }
                     RCTCamera.getInstance().releaseCameraInstance(_cameraType);
                     _camera = null;
                 }
@@ -208,139 +347,132 @@ class RCTCameraViewFinder extends TextureView implements TextureView.SurfaceText
     }
 
     /**
-     * Parse barcodes as BarcodeFormat constants.
-     *
-     * Supports all iOS codes except [code39mod43, itf14]
-     *
-     * Additionally supports [codabar, maxicode, rss14, rssexpanded, upca, upceanextension]
+     * Register `onPreviewFrame` with the camera while the barcode scanner is enabled or a frame
+     * processor is registered, and remove it otherwise, so the camera does not fill buffers nobody
+     * reads. Called whenever either changes.
      */
-    private BarcodeFormat parseBarCodeString(String c) {
-        if ("aztec".equals(c)) {
-            return BarcodeFormat.AZTEC;
-        } else if ("ean13".equals(c)) {
-            return BarcodeFormat.EAN_13;
-        } else if ("ean8".equals(c)) {
-            return BarcodeFormat.EAN_8;
-        } else if ("qr".equals(c)) {
-            return BarcodeFormat.QR_CODE;
-        } else if ("pdf417".equals(c)) {
-            return BarcodeFormat.PDF_417;
-        } else if ("upce".equals(c)) {
-            return BarcodeFormat.UPC_E;
-        } else if ("datamatrix".equals(c)) {
-            return BarcodeFormat.DATA_MATRIX;
-        } else if ("code39".equals(c)) {
-            return BarcodeFormat.CODE_39;
-        } else if ("code93".equals(c)) {
-            return BarcodeFormat.CODE_93;
-        } else if ("interleaved2of5".equals(c)) {
-            return BarcodeFormat.ITF;
-        } else if ("codabar".equals(c)) {
-            return BarcodeFormat.CODABAR;
-        } else if ("code128".equals(c)) {
-            return BarcodeFormat.CODE_128;
-        } else if ("maxicode".equals(c)) {
-            return BarcodeFormat.MAXICODE;
-        } else if ("rss14".equals(c)) {
-            return BarcodeFormat.RSS_14;
-        } else if ("rssexpanded".equals(c)) {
-            return BarcodeFormat.RSS_EXPANDED;
-        } else if ("upca".equals(c)) {
-            return BarcodeFormat.UPC_A;
-        } else if ("upceanextension".equals(c)) {
-            return BarcodeFormat.UPC_EAN_EXTENSION;
-        } else {
-            android.util.Log.v("RCTCamera", "Unsupported code.. [" + c + "]");
-            return null;
+    synchronized public void updatePreviewCallback() {
+        if (_camera == null) {
+            return;
+        }
+        boolean needed = !_isPreviewCallbackPaused
+                && (RCTCamera.getInstance().isBarcodeScannerEnabled() || !_frameProcessors.isEmpty());
+        if (needed == _isPreviewCallbackAttached) {
+            return;
+        }
+        try {
+            if (needed) {
+                // send previews to `onPreviewFrame`, reusing pooled buffers
+                _previewBufferPool.attach(_camera, PREVIEW_BUFFER_COUNT);
+                _frameChangeDetector.invalidate();
+                _camera.setPreviewCallbackWithBuffer(this);
+            } else {
+                _camera.setPreviewCallbackWithBuffer(null);
+                _previewBufferPool.detach();
+                // nothing is scanning any more, normal preview and video get their frame rate back
+                _scanRateGovernor.restorePreviewFpsRange();
+            }
+            _isPreviewCallbackAttached = needed;
+        } catch (RuntimeException e) {
+            // camera was released underneath us
+            e.printStackTrace();
         }
     }
 
     /**
-     * Initialize the barcode decoder.
+     * Detach the preview callback while a picture is taken, until {@link #resumePreviewCallback()}
+     * is called once the preview has been restarted.
      */
-    private void initBarcodeReader(List<String> barCodeTypes) {
-        EnumMap<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
-        EnumSet<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
-
-        if (barCodeTypes != null) {
-            for (String code : barCodeTypes) {
-                BarcodeFormat format = parseBarCodeString(code);
-                if (format != null) {
-                    decodeFormats.add(format);
-                }
-            }
-        }
+    synchronized public void pausePreviewCallback() {
+        _isPreviewCallbackPaused = true;
+        updatePreviewCallback();
+    }
 
-        hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-        _multiFormatReader.setHints(hints);
+    synchronized public void resumePreviewCallback() {
+        _isPreviewCallbackPaused = false;
+        updatePreviewCallback();
     }
 
     /**
-     * Spawn a barcode reader task if
-     *  - the barcode scanner is enabled (has a onBarCodeRead function)
-     *  - one isn't already running
+     * Hand the frame to the barcode scanner if it is enabled (has a onBarCodeRead function), the
+     * scene has changed since the last decoded frame and the scan rate governor wants another
+     * frame, and to the frame processors that are due for one. They all share a copy of the luma
+     * plane, downscaled with an analysis size, and the preview buffer goes straight back to the
+     * camera.
      *
      * See {Camera.PreviewCallback}
      */
     public void onPreviewFrame(byte[] data, Camera camera) {
-        if (RCTCamera.getInstance().isBarcodeScannerEnabled() && !RCTCameraViewFinder.barcodeScannerTaskLock) {
-            RCTCameraViewFinder.barcodeScannerTaskLock = true;
-            new ReaderAsyncTask(camera, data).execute();
+        int rotation = RCTCamera.getInstance().getPreviewRotation(_cameraType);
+        PreviewFrame cameraFrame = _previewBufferPool.obtainFrame(data, camera, rotation, getNormalizedScanArea(), getViewFinderGeometry());
+        if (cameraFrame == null) {
+            return;
         }
-    }
-
-    private class ReaderAsyncTask extends AsyncTask<Void, Void, Void> {
-        private byte[] imageData;
-        private final Camera camera;
-
-        ReaderAsyncTask(Camera camera, byte[] imageData) {
-            this.camera = camera;
-            this.imageData = imageData;
+        PreviewFrame frame;
+        try {
+            frame = _lumaDecimator.decimate(cameraFrame);
+        } finally {
+            cameraFrame.release();
         }
-
-        @Override
-        protected Void doInBackground(Void... ignored) {
-            if (isCancelled()) {
-                return null;
+        try {
+            boolean scanning = RCTCamera.getInstance().isBarcodeScannerEnabled();
+            if (scanning) {
+                offerToBarcodeScanner(frame);
+            } else if (_isScanning) {
+                // the frame processors and the preview get the camera's full frame rate again
+                _scanRateGovernor.restorePreviewFpsRange();
             }
+            _isScanning = scanning;
+            _frameProcessors.dispatch(frame);
+        } finally {
+            frame.release();
+        }
+    }
 
-            Camera.Size size = camera.getParameters().getPreviewSize();
-
-            int width = size.width;
-            int height = size.height;
+    private void offerToBarcodeScanner(PreviewFrame frame) {
+        ScannerStats stats = ScannerStats.getInstance();
+        if (!_isScanning) {
+            _barcodeScanner.beginSession();
+        }
+        stats.onFrameDelivered();
+        // an unread scene still goes to the decoder while it is trying harder and harder
+        if (!_frameChangeDetector.hasChanged(frame) && !_barcodeScanner.isEscalating()) {
+            stats.onFrameUnchanged();
+        } else if (!_scanRateGovernor.shouldOffer()) {
+            stats.onFrameThrottled();
+        } else {
+            _frameChangeDetector.markDecoded();
+            _barcodeScanner.post(frame.retain());
+        }
+    }
 
-            // rotate for zxing if orientation is portrait
-            if (RCTCamera.getInstance().getActualDeviceOrientation() == 0) {
-                byte[] rotated = new byte[imageData.length];
-                for (int y = 0; y < height; y++) {
-                    for (int x = 0; x < width; x++) {
-                        rotated[x * height + height - y - 1] = imageData[x + y * width];
-                    }
-                }
-                width = size.height;
-                height = size.width;
-                imageData = rotated;
-            }
+    /**
+     * The scan area relative to the upright preview frame, or null to scan the whole frame. An area
+     * that lies entirely outside of the viewfinder also falls back to the whole frame.
+     */
+    private RectF getNormalizedScanArea() {
+        RectF scanArea = _scanArea;
+        if (scanArea == null) {
+            return null;
+        }
+        return RCTCameraUtils.computeNormalizedScanArea(
+                scanArea,
+                getLeft(),
+                getTop(),
+                getWidth(),
+                getHeight(),
+                _cameraType == RCTCameraModule.RCT_CAMERA_TYPE_FRONT
+        );
+    }
 
-            try {
-                PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(imageData, width, height, 0, 0, width, height, false);
-                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-                Result result = _multiFormatReader.decodeWithState(bitmap);
-
-                ReactContext reactContext = RCTCameraModule.getReactContextSingleton();
-                WritableMap event = Arguments.createMap();
-                event.putString("data", result.getText());
-                event.putString("type", result.getBarcodeFormat().toString());
-                reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit("CameraBarCodeReadAndroid", event);
-
-            } catch (Throwable t) {
-                // meh
-            } finally {
-                _multiFormatReader.reset();
-                RCTCameraViewFinder.barcodeScannerTaskLock = false;
-                return null;
-            }
+    private ViewFinderGeometry getViewFinderGeometry() {
+        boolean mirrored = _cameraType == RCTCameraModule.RCT_CAMERA_TYPE_FRONT;
+        ViewFinderGeometry geometry = _viewFinderGeometry;
+        if (geometry == null || !geometry.matches(getLeft(), getTop(), getWidth(), getHeight(), mirrored)) {
+            geometry = new ViewFinderGeometry(getLeft(), getTop(), getWidth(), getHeight(), mirrored);
+            _viewFinderGeometry = geometry;
         }
+        return geometry;
     }
 
     @Override
@@ -438,6 +570,7 @@ class RCTCameraViewFinder extends TextureView implements TextureView.SurfaceText
                     public void onAutoFocus(boolean success, Camera camera) {
                         if (success) {
                             camera.cancelAutoFocus();
+                            _frameChangeDetector.invalidate();
                         }
                     }
                 });
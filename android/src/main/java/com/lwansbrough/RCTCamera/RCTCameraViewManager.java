@@ -1,8 +1,10 @@
 package com.lwansbrough.RCTCamera;
 
+import android.graphics.RectF;
 import android.support.annotation.Nullable;
 
 import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.uimanager.*;
 import com.facebook.react.uimanager.annotations.ReactProp;
 
@@ -75,6 +77,110 @@ public class RCTCameraViewManager extends ViewGroupManager<RCTCameraView> {
         view.setBarcodeScannerEnabled(barcodeScannerEnabled);
     }
 
+    @ReactProp(name = "barcodeScannerThreadPriority")
+    public void setBarcodeScannerThreadPriority(RCTCameraView view, int priority) {
+        // Priority in android.os.Process units, from -20 (most favorable) to 19 (least favorable)
+        view.setBarcodeScannerThreadPriority(priority);
+    }
+
+    @ReactProp(name = "barcodeDecoderPoolSize", defaultInt = 1)
+    public void setBarcodeDecoderPoolSize(RCTCameraView view, int poolSize) {
+        view.setBarcodeDecoderPoolSize(poolSize);
+    }
+
+    @ReactProp(name = "barcodeScannerTargetLatency")
+    public void setBarcodeScannerTargetLatency(RCTCameraView view, int targetLatencyMs) {
+        view.setBarcodeScannerTargetLatency(targetLatencyMs);
+    }
+
+    @ReactProp(name = "barcodeScannerMaxCpu")
+    public void setBarcodeScannerMaxCpu(RCTCameraView view, float maxCpu) {
+        view.setBarcodeScannerMaxCpu(maxCpu);
+    }
+
+    @ReactProp(name = "barcodeScannerChangeThreshold")
+    public void setBarcodeScannerChangeThreshold(RCTCameraView view, int threshold) {
+        view.setBarcodeScannerChangeThreshold(threshold);
+    }
+
+    @ReactProp(name = "barcodeScannerEscalationFrames")
+    public void setBarcodeScannerEscalationFrames(RCTCameraView view, int escalationFrames) {
+        view.setBarcodeScannerEscalationFrames(escalationFrames);
+    }
+
+    @ReactProp(name = "barcodeScannerDecodeBudget")
+    public void setBarcodeScannerDecodeBudget(RCTCameraView view, int decodeBudgetMs) {
+        view.setBarcodeScannerDecodeBudget(decodeBudgetMs);
+    }
+
+    @ReactProp(name = "barcodeScannerTracking")
+    public void setBarcodeScannerTracking(RCTCameraView view, boolean tracking) {
+        view.setBarcodeScannerTracking(tracking);
+    }
+
+    @ReactProp(name = "barcodeScannerFormatLearning")
+    public void setBarcodeScannerFormatLearning(RCTCameraView view, boolean learning) {
+        view.setBarcodeScannerFormatLearning(learning);
+    }
+
+    @ReactProp(name = "barcodeScannerPersistFormatLearning")
+    public void setBarcodeScannerPersistFormatLearning(RCTCameraView view, boolean persist) {
+        view.setBarcodeScannerPersistFormatLearning(persist);
+    }
+
+    @ReactProp(name = "barcodeScannerScanlines")
+    public void setBarcodeScannerScanlines(RCTCameraView view, int scanlines) {
+        view.setBarcodeScannerScanlines(scanlines);
+    }
+
+    @ReactProp(name = "barcodeScannerRaceFormats")
+    public void setBarcodeScannerRaceFormats(RCTCameraView view, boolean raceFormats) {
+        view.setBarcodeScannerRaceFormats(raceFormats);
+    }
+
+    @ReactProp(name = "barcodeScannerAnalysisSize")
+    public void setBarcodeScannerAnalysisSize(RCTCameraView view, int analysisSize) {
+        view.setBarcodeScannerAnalysisSize(analysisSize);
+    }
+
+    @ReactProp(name = "barcodeScannerStatsInterval")
+    public void setBarcodeScannerStatsInterval(RCTCameraView view, int intervalMs) {
+        view.setBarcodeScannerStatsInterval(intervalMs);
+    }
+
+    @ReactProp(name = "barCodeResultTtl")
+    public void setBarCodeResultTtl(RCTCameraView view, int ttlMs) {
+        view.setBarCodeResultTtl(ttlMs);
+    }
+
+    @ReactProp(name = "barCodeMinRepeat", defaultInt = 1)
+    public void setBarCodeMinRepeat(RCTCameraView view, int minRepeat) {
+        view.setBarCodeMinRepeat(minRepeat);
+    }
+
+    @ReactProp(name = "barCodeCooldown")
+    public void setBarCodeCooldown(RCTCameraView view, int cooldownMs) {
+        view.setBarCodeCooldown(cooldownMs);
+    }
+
+    @ReactProp(name = "barCodeMultiDecode")
+    public void setBarCodeMultiDecode(RCTCameraView view, boolean multiDecode) {
+        view.setBarCodeMultiDecode(multiDecode);
+    }
+
+    @ReactProp(name = "scanArea")
+    public void setScanArea(RCTCameraView view, @Nullable ReadableMap scanArea) {
+        if (scanArea == null) {
+            view.setScanArea(null);
+            return;
+        }
+        float x = PixelUtil.toPixelFromDIP(scanArea.getDouble("x"));
+        float y = PixelUtil.toPixelFromDIP(scanArea.getDouble("y"));
+        float width = PixelUtil.toPixelFromDIP(scanArea.getDouble("width"));
+        float height = PixelUtil.toPixelFromDIP(scanArea.getDouble("height"));
+        view.setScanArea(new RectF(x, y, x + width, y + height));
+    }
+
     @ReactProp(name = "barCodeTypes")
     public void setBarCodeTypes(RCTCameraView view, ReadableArray barCodeTypes) {
         if (barCodeTypes == null) {
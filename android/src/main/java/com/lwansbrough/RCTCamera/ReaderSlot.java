@@ -0,0 +1,22 @@
+package com.lwansbrough.RCTCamera;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Reader;
+
+import java.util.Set;
+
+/**
+ * A reader in a decode plan, along with the formats it reads and its place in the default order.
+ */
+class ReaderSlot<R extends Reader> {
+    public final R reader;
+    public final Set<BarcodeFormat> formats;
+    // position among its siblings before any reordering
+    public final int defaultOrder;
+
+    ReaderSlot(R reader, Set<BarcodeFormat> formats, int defaultOrder) {
+        this.reader = reader;
+        this.formats = formats;
+        this.defaultOrder = defaultOrder;
+    }
+}
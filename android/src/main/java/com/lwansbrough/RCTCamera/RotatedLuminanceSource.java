@@ -0,0 +1,164 @@
+package com.lwansbrough.RCTCamera;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Exposes the Y plane of a planar YUV preview frame (e.g. NV21) to ZXing, rotated by a multiple of
+ * 90 degrees, without copying or rotating the underlying buffer.
+ *
+ * Every pixel (x, y) of this source lives at {@code origin + x * stepX + y * stepY} in the
+ * original data, so rotation and cropping are only a matter of adjusting those three numbers.
+ *
+ * A source can carry a {@link DecodeToken}, checked whenever ZXing reads from it, which lets a
+ * decode that has run out of time or was cancelled be abandoned.
+ */
+final class RotatedLuminanceSource extends LuminanceSource {
+    private final byte[] _data;
+    private final int _origin;
+    private final int _stepX;
+    private final int _stepY;
+    private final DecodeToken _token;
+
+    /**
+     * @param data planar YUV data, only the leading dataWidth * dataHeight luma bytes are read.
+     * @param rotation clockwise rotation to apply to the frame, one of 0, 90, 180 or 270.
+     */
+    public RotatedLuminanceSource(byte[] data, int dataWidth, int dataHeight, int rotation) {
+        this(data, dataWidth, dataHeight, rotation, null);
+    }
+
+    /**
+     * @param token checked on every read, null for none.
+     */
+    public RotatedLuminanceSource(byte[] data, int dataWidth, int dataHeight, int rotation, DecodeToken token) {
+        super(rotation % 180 == 0 ? dataWidth : dataHeight, rotation % 180 == 0 ? dataHeight : dataWidth);
+        if (dataWidth * dataHeight > data.length) {
+            throw new IllegalArgumentException("Frame is smaller than " + dataWidth + "x" + dataHeight);
+        }
+        _data = data;
+        _token = token;
+        switch (rotation) {
+            case 0:
+                _origin = 0;
+                _stepX = 1;
+                _stepY = dataWidth;
+                break;
+            case 90:
+                _origin = (dataHeight - 1) * dataWidth;
+                _stepX = -dataWidth;
+                _stepY = 1;
+                break;
+            case 180:
+                _origin = dataWidth * dataHeight - 1;
+                _stepX = -1;
+                _stepY = -dataWidth;
+                break;
+            case 270:
+                _origin = dataWidth - 1;
+                _stepX = dataWidth;
+                _stepY = -1;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+    }
+
+    private RotatedLuminanceSource(byte[] data, int origin, int stepX, int stepY, int width, int height, DecodeToken token) {
+        super(width, height);
+        _data = data;
+        _origin = origin;
+        _stepX = stepX;
+        _stepY = stepY;
+        _token = token;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        checkToken();
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        int offset = _origin + y * _stepY;
+        if (_stepX == 1) {
+            System.arraycopy(_data, offset, row, 0, width);
+        } else {
+            for (int x = 0; x < width; x++, offset += _stepX) {
+                row[x] = _data[offset];
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        checkToken();
+        int width = getWidth();
+        int height = getHeight();
+        if (_origin == 0 && _stepX == 1 && _stepY == width) {
+            // upright and uncropped, the luma plane already is the matrix
+            return _data;
+        }
+        byte[] matrix = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int offset = _origin + y * _stepY;
+            int outputOffset = y * width;
+            if (_stepX == 1) {
+                System.arraycopy(_data, offset, matrix, outputOffset, width);
+            } else {
+                for (int x = 0; x < width; x++, offset += _stepX) {
+                    matrix[outputOffset + x] = _data[offset];
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public RotatedLuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        return new RotatedLuminanceSource(_data, _origin + left * _stepX + top * _stepY, _stepX, _stepY, width, height, _token);
+    }
+
+    /**
+     * A source keeping every factor-th pixel of every factor-th row. Pixel (x, y) of the result
+     * is pixel (x * factor, y * factor) of this source.
+     */
+    public RotatedLuminanceSource subsample(int factor) {
+        return new RotatedLuminanceSource(_data, _origin, _stepX * factor, _stepY * factor, getWidth() / factor, getHeight() / factor, _token);
+    }
+
+    /**
+     * The same pixels, checked against another token.
+     */
+    public RotatedLuminanceSource withToken(DecodeToken token) {
+        return new RotatedLuminanceSource(_data, _origin, _stepX, _stepY, getWidth(), getHeight(), token);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        // new (x, y) is old (width - 1 - y, x)
+        return new RotatedLuminanceSource(_data, _origin + (getWidth() - 1) * _stepX, _stepY, -_stepX, getHeight(), getWidth(), _token);
+    }
+
+    private void checkToken() {
+        if (_token != null) {
+            _token.check();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.lwansbrough.RCTCamera;
+
+import android.hardware.Camera;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Decides how often preview frames are offered to the barcode scanner, and how fast the camera
+ * should be delivering them in the first place.
+ *
+ * The governor keeps a rolling average of decode latency and success rate. The CPU budget bounds
+ * the offer rate from above: a decode taking L ms may only be started every L / maxCpu ms. While
+ * nothing is being found the interval is relaxed towards the target latency, which is the longest
+ * we are willing to wait before looking at a newly presented barcode. The preview frame rate range
+ * is then lowered to the slowest one that still keeps up, which saves sensor and ISP power.
+ */
+class ScanRateGovernor {
+    private static final String TAG = "RCTCamera";
+    // weight of the newest sample in the rolling averages
+    private static final float SMOOTHING = 0.2f;
+    // keep the viewfinder smooth no matter how little we need to decode
+    private static final int MIN_PREVIEW_FPS = 15;
+    // Camera.setParameters is expensive and may glitch the preview, don't call it too often
+    private static final long FPS_ADJUST_INTERVAL_MS = 2000;
+
+    private int _targetLatencyMs = 0;
+    private float _maxCpu = 0;
+
+    private float _averageDecodeMs = 0;
+    private float _successRate = 0;
+    private long _lastOfferTime = 0;
+
+    private Camera _camera;
+    private int[] _originalFpsRange;
+    private int[] _currentFpsRange;
+    private long _lastFpsAdjustTime = 0;
+
+    /**
+     * @param targetLatencyMs longest acceptable delay between a barcode entering the frame and
+     * the decode that finds it, 0 to disable.
+     * @param maxCpu share of a single core the scanner may keep busy (1 is a full core), 0 to
+     * disable.
+     */
+    public synchronized void setBudgets(int targetLatencyMs, float maxCpu) {
+        _targetLatencyMs = Math.max(0, targetLatencyMs);
+        _maxCpu = Math.max(0, maxCpu);
+        if (!isEnabled()) {
+            restorePreviewFpsRange();
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return _targetLatencyMs > 0 || _maxCpu > 0;
+    }
+
+    public synchronized void attach(Camera camera) {
+        _camera = camera;
+        _originalFpsRange = new int[2];
+        camera.getParameters().getPreviewFpsRange(_originalFpsRange);
+        _currentFpsRange = _originalFpsRange;
+    }
+
+    public synchronized void detach() {
+        restorePreviewFpsRange();
+        _camera = null;
+        _originalFpsRange = null;
+        _currentFpsRange = null;
+    }
+
+    /**
+     * Called by decode workers once a frame has been processed.
+     */
+    public synchronized void onDecodeFinished(long decodeMs, boolean success) {
+        if (_averageDecodeMs == 0) {
+            _averageDecodeMs = decodeMs;
+        } else {
+            _averageDecodeMs += SMOOTHING * (decodeMs - _averageDecodeMs);
+        }
+        _successRate += SMOOTHING * ((success ? 1 : 0) - _successRate);
+    }
+
+    /**
+     * Called on the camera thread for every preview frame. Returns whether this frame should be
+     * handed to the scanner.
+     */
+    public synchronized boolean shouldOffer() {
+        if (!isEnabled()) {
+            return true;
+        }
+        long now = SystemClock.elapsedRealtime();
+        long interval = getOfferInterval();
+        adjustPreviewFpsRange(interval, now);
+        if (now - _lastOfferTime < interval) {
+            return false;
+        }
+        _lastOfferTime = now;
+        return true;
+    }
+
+    private long getOfferInterval() {
+        float minInterval = _maxCpu > 0 ? _averageDecodeMs / _maxCpu : 0;
+        if (_targetLatencyMs <= 0) {
+            return (long) minInterval;
+        }
+        float maxInterval = Math.max(minInterval, _targetLatencyMs - _averageDecodeMs);
+        // scan as fast as the budget allows while codes are being found, back off while idle
+        return (long) (minInterval + (1 - _successRate) * (maxInterval - minInterval));
+    }
+
+    private void adjustPreviewFpsRange(long offerInterval, long now) {
+        if (_camera == null || now - _lastFpsAdjustTime < FPS_ADJUST_INTERVAL_MS) {
+            return;
+        }
+        _lastFpsAdjustTime = now;
+
+        int neededFps = Math.max(MIN_PREVIEW_FPS, offerInterval > 0 ? (int) Math.ceil(1000.0 / offerInterval) : Integer.MAX_VALUE);
+        try {
+            Camera.Parameters parameters = _camera.getParameters();
+            int[] range = getSlowestFpsRange(parameters.getSupportedPreviewFpsRange(), neededFps * 1000);
+            if (range == null || (_currentFpsRange != null
+                    && range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] == _currentFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX]
+                    && range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] == _currentFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX])) {
+                return;
+            }
+            setPreviewFpsRange(parameters, range);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "failed to adjust preview fps range", e);
+        }
+    }
+
+    /**
+     * Put the camera back on the frame rate range it had when attached, e.g. once nothing is
+     * scanning any more. The range is lowered again by the next frames offered.
+     */
+    public synchronized void restorePreviewFpsRange() {
+        if (_camera == null || _originalFpsRange == null || _currentFpsRange == _originalFpsRange) {
+            return;
+        }
+        try {
+            setPreviewFpsRange(_camera.getParameters(), _originalFpsRange);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "failed to restore preview fps range", e);
+        }
+    }
+
+    private void setPreviewFpsRange(Camera.Parameters parameters, int[] range) {
+        parameters.setPreviewFpsRange(range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX], range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        _camera.setParameters(parameters);
+        _currentFpsRange = range;
+    }
+
+    /**
+     * The range with the lowest maximum that still reaches neededFps (in fps * 1000), preferring
+     * the lowest minimum so auto exposure is free to lengthen exposure in dim light. Falls back to
+     * the fastest range if none is fast enough.
+     */
+    private static int[] getSlowestFpsRange(List<int[]> supportedRanges, int neededFps) {
+        if (supportedRanges == null) {
+            return null;
+        }
+        int[] best = null;
+        int[] fastest = null;
+        for (int[] range : supportedRanges) {
+            int max = range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            int min = range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
+            if (fastest == null || max > fastest[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]) {
+                fastest = range;
+            }
+            if (max < neededFps) {
+                continue;
+            }
+            if (best == null
+                    || max < best[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]
+                    || (max == best[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] && min < best[Camera.Parameters.PREVIEW_FPS_MIN_INDEX])) {
+                best = range;
+            }
+        }
+        return best != null ? best : fastest;
+    }
+}
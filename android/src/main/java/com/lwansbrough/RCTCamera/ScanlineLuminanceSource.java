@@ -0,0 +1,62 @@
+package com.lwansbrough.RCTCamera;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A handful of rows sampled from another source, packed into a compact image, for 1D readers
+ * that only ever look at single rows anyway. Emulates a laser scanner: the rows are evenly spaced
+ * around the middle of the source, and 1D readers visit them from the middle row outward,
+ * alternating above and below it.
+ *
+ * The rows are copied once on construction, so reading them is cheap and does not touch the
+ * camera buffer again. Row y of this source is row {@link #getSourceRow(int)} of the original.
+ */
+final class ScanlineLuminanceSource extends LuminanceSource {
+    private final byte[] _rows;
+    private final int[] _sourceRows;
+
+    /**
+     * @param rowCount number of rows to sample, at most the source's height.
+     * @param spacing distance between neighbouring rows, in source pixels.
+     */
+    public ScanlineLuminanceSource(LuminanceSource source, int rowCount, int spacing) {
+        super(source.getWidth(), Math.max(1, Math.min(rowCount, source.getHeight())));
+        int width = getWidth();
+        int height = getHeight();
+        int sourceHeight = source.getHeight();
+        spacing = Math.max(1, Math.min(spacing, sourceHeight / height));
+
+        // rows in top to bottom order, centered on the middle of the source
+        int top = sourceHeight / 2 - (height - 1) * spacing / 2;
+        _sourceRows = new int[height];
+        _rows = new byte[width * height];
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            _sourceRows[y] = Math.max(0, Math.min(sourceHeight - 1, top + y * spacing));
+            row = source.getRow(_sourceRows[y], row);
+            System.arraycopy(row, 0, _rows, y * width, width);
+        }
+    }
+
+    public int getSourceRow(int y) {
+        return _sourceRows[y];
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        System.arraycopy(_rows, y * width, row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        return _rows;
+    }
+}
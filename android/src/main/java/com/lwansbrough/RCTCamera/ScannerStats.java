@@ -0,0 +1,102 @@
+package com.lwansbrough.RCTCamera;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide barcode scanner counters, updated lock free by the camera thread and the decode
+ * workers and read from JS through {@link RCTCameraModule#getScannerStats}, or periodically by a
+ * {@link ScannerStatsReporter}.
+ *
+ * A preview frame delivered to the scanner ends up in exactly one of: unchanged (skipped by the
+ * change detector), throttled (held back by the scan rate governor), dropped (replaced in the
+ * mailbox by a newer frame before a worker got to it) or decoded.
+ */
+class ScannerStats {
+    private static final ScannerStats ourInstance = new ScannerStats();
+
+    private final AtomicLong _framesDelivered = new AtomicLong();
+    private final AtomicLong _framesUnchanged = new AtomicLong();
+    private final AtomicLong _framesThrottled = new AtomicLong();
+    private final AtomicLong _framesDropped = new AtomicLong();
+    private final AtomicLong _framesDecoded = new AtomicLong();
+    private final AtomicLong _framesWithResults = new AtomicLong();
+    private final AtomicLong _decodeTimeouts = new AtomicLong();
+    // barcodes decoded, by format ordinal
+    private final AtomicLongArray _reads = new AtomicLongArray(BarcodeFormat.values().length);
+    private final LatencyHistogram _decodeLatency = new LatencyHistogram();
+    private final LatencyHistogram _timeToFirstScan = new LatencyHistogram();
+
+    public static ScannerStats getInstance() {
+        return ourInstance;
+    }
+
+    public void onFrameDelivered() {
+        _framesDelivered.incrementAndGet();
+    }
+
+    public void onFrameUnchanged() {
+        _framesUnchanged.incrementAndGet();
+    }
+
+    public void onFrameThrottled() {
+        _framesThrottled.incrementAndGet();
+    }
+
+    public void onFrameDropped() {
+        _framesDropped.incrementAndGet();
+    }
+
+    /**
+     * @param results the barcodes found in the frame, or null if there were none.
+     */
+    public void onFrameDecoded(long latencyNanos, Result[] results) {
+        _framesDecoded.incrementAndGet();
+        _decodeLatency.record(latencyNanos / 1000);
+        if (results == null) {
+            return;
+        }
+        _framesWithResults.incrementAndGet();
+        for (Result result : results) {
+            _reads.incrementAndGet(result.getBarcodeFormat().ordinal());
+        }
+    }
+
+    public void onDecodeTimeout() {
+        _decodeTimeouts.incrementAndGet();
+    }
+
+    /**
+     * @param latencyNanos time from the scanner starting to its first barcode being reported.
+     */
+    public void onFirstScan(long latencyNanos) {
+        _timeToFirstScan.record(latencyNanos / 1000);
+    }
+
+    public WritableMap toMap() {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("framesDelivered", _framesDelivered.get());
+        stats.putDouble("framesUnchanged", _framesUnchanged.get());
+        stats.putDouble("framesThrottled", _framesThrottled.get());
+        stats.putDouble("framesDropped", _framesDropped.get());
+        stats.putDouble("framesDecoded", _framesDecoded.get());
+        stats.putDouble("framesWithResults", _framesWithResults.get());
+        stats.putDouble("decodeTimeouts", _decodeTimeouts.get());
+        WritableMap reads = Arguments.createMap();
+        for (BarcodeFormat format : BarcodeFormat.values()) {
+            long count = _reads.get(format.ordinal());
+            if (count > 0) {
+                reads.putDouble(format.toString(), count);
+            }
+        }
+        stats.putMap("reads", reads);
+        stats.putMap("decodeLatency", _decodeLatency.toMap());
+        stats.putMap("timeToFirstScan", _timeToFirstScan.toMap());
+        return stats;
+    }
+}
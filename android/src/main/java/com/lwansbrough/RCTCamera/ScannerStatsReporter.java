@@ -0,0 +1,54 @@
+package com.lwansbrough.RCTCamera;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+/**
+ * Sends {@link ScannerStats} to JS at a fixed interval while the camera is running, as the
+ * "CameraScannerStatsAndroid" event. Runs on the main thread.
+ */
+class ScannerStatsReporter implements Runnable {
+    private final Handler _handler = new Handler(Looper.getMainLooper());
+    private int _intervalMs = 0;
+    private boolean _running;
+
+    /**
+     * @param intervalMs time between two reports, 0 to stop reporting.
+     */
+    public synchronized void setInterval(int intervalMs) {
+        _intervalMs = Math.max(0, intervalMs);
+        schedule();
+    }
+
+    public synchronized void start() {
+        _running = true;
+        schedule();
+    }
+
+    public synchronized void stop() {
+        _running = false;
+        _handler.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        ReactContext reactContext = RCTCameraModule.getReactContextSingleton();
+        if (reactContext != null) {
+            reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit("CameraScannerStatsAndroid", ScannerStats.getInstance().toMap());
+        }
+        synchronized (this) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        _handler.removeCallbacks(this);
+        if (_running && _intervalMs > 0) {
+            _handler.postDelayed(this, _intervalMs);
+        }
+    }
+}
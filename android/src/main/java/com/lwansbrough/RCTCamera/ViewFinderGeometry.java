@@ -0,0 +1,36 @@
+package com.lwansbrough.RCTCamera;
+
+import android.graphics.RectF;
+
+/**
+ * Where the viewfinder sits in the camera view, captured together with each preview frame so
+ * that barcodes found in the frame can be reported in view coordinates.
+ */
+class ViewFinderGeometry {
+    public final int left;
+    public final int top;
+    public final int width;
+    public final int height;
+    // front facing previews are shown mirrored
+    public final boolean mirrored;
+
+    ViewFinderGeometry(int left, int top, int width, int height, boolean mirrored) {
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.mirrored = mirrored;
+    }
+
+    public boolean matches(int left, int top, int width, int height, boolean mirrored) {
+        return this.left == left && this.top == top && this.width == width && this.height == height && this.mirrored == mirrored;
+    }
+
+    /**
+     * @param normalized a rectangle normalized to [0, 1] over the upright preview frame.
+     * @return the rectangle in the camera view's coordinates, in pixels.
+     */
+    public RectF toViewRect(RectF normalized) {
+        return RCTCameraUtils.computeViewRect(normalized, left, top, width, height, mirrored);
+    }
+}
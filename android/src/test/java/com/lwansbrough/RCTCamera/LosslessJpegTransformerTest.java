@@ -0,0 +1,224 @@
+package com.lwansbrough.RCTCamera;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Transforms the fixture JPEGs and compares the decoded result with the decoded original, pixel by
+ * pixel. The fixtures carry an EXIF orientation of 6, a LONG PixelXDimension and a SHORT
+ * PixelYDimension. The rgb ones are 4:2:0, so their MCUs are 16x16, the gray ones 8x8.
+ */
+public class LosslessJpegTransformerTest {
+    private static final String[] ALIGNED = {"rgb-64x48.jpg", "gray-64x48.jpg"};
+    private static final String[] UNALIGNED = {"rgb-67x45.jpg", "gray-37x21.jpg"};
+
+    // decoders upsample chroma from neighbouring blocks, which differ once the blocks have moved
+    private static final double MAX_MEAN_DIFFERENCE = 1.0;
+    private static final int MAX_DIFFERENCE = 40;
+
+    @Test
+    public void transformsAlignedImages() throws Exception {
+        for (String name : ALIGNED) {
+            for (int orientation = 1; orientation <= 8; orientation++) {
+                assertTransformed(name, orientation, false);
+            }
+        }
+    }
+
+    @Test
+    public void trimsUnalignedImages() throws Exception {
+        for (String name : UNALIGNED) {
+            for (int orientation = 1; orientation <= 8; orientation++) {
+                assertTransformed(name, orientation, true);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsUnalignedImagesWithoutTrimming() throws Exception {
+        for (String name : UNALIGNED) {
+            byte[] jpeg = readFixture(name);
+            for (int orientation = 1; orientation <= 8; orientation++) {
+                // edges are only moved to the left or top by these
+                boolean moved = orientation != 1 && orientation != 5;
+                try {
+                    LosslessJpegTransformer.transform(jpeg, orientation, false, true);
+                    assertTrue(name + " orientation " + orientation + " should have been rejected", !moved);
+                } catch (LosslessJpegTransformer.UnsupportedJpegException e) {
+                    assertTrue(name + " orientation " + orientation + " should not have been rejected", moved);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripIsLossless() throws Exception {
+        for (String name : ALIGNED) {
+            byte[] jpeg = readFixture(name);
+            byte[] rotated = LosslessJpegTransformer.transform(jpeg, 6, false, true);
+            byte[] back = LosslessJpegTransformer.transform(rotated, 8, false, true);
+            BufferedImage original = decode(jpeg);
+            BufferedImage result = decode(back);
+            assertEquals(original.getWidth(), result.getWidth());
+            assertEquals(original.getHeight(), result.getHeight());
+            for (int y = 0; y < original.getHeight(); y++) {
+                for (int x = 0; x < original.getWidth(); x++) {
+                    assertEquals(name + " at " + x + "," + y, original.getRGB(x, y), result.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keepsTheOrientationTagUnlessAskedToReset() throws Exception {
+        byte[] jpeg = readFixture(ALIGNED[0]);
+        Metadata kept = readMetadata(LosslessJpegTransformer.transform(jpeg, 2, false, false));
+        assertEquals(6, kept.getFirstDirectoryOfType(ExifIFD0Directory.class).getInt(ExifIFD0Directory.TAG_ORIENTATION));
+    }
+
+    @Test
+    public void combinesOrientations() {
+        // on a non square grid, so transposes can't hide
+        int width = 5;
+        int height = 3;
+        for (int first = 1; first <= 8; first++) {
+            for (int then = 1; then <= 8; then++) {
+                int combined = LosslessJpegTransformer.combine(first, then);
+                int[] firstSize = transformedSize(first, width, height);
+                int[] combinedSize = transformedSize(combined, width, height);
+                for (int y = 0; y < combinedSize[1]; y++) {
+                    for (int x = 0; x < combinedSize[0]; x++) {
+                        int[] between = sourceOf(then, x, y, firstSize[0], firstSize[1]);
+                        assertArrayEquals(first + " then " + then,
+                                sourceOf(first, between[0], between[1], width, height),
+                                sourceOf(combined, x, y, width, height));
+                    }
+                }
+            }
+        }
+    }
+
+    private void assertTransformed(String name, int orientation, boolean trim) throws Exception {
+        byte[] jpeg = readFixture(name);
+        BufferedImage source = decode(jpeg);
+        byte[] transformed = LosslessJpegTransformer.transform(jpeg, orientation, trim, true);
+        BufferedImage result = decode(transformed);
+        String description = name + " orientation " + orientation;
+
+        int[] size = transformedSize(orientation, source.getWidth(), source.getHeight());
+        if (trim) {
+            // at most one partial MCU trimmed off each axis
+            assertTrue(description + " trimmed too much", size[0] - result.getWidth() < 16 && size[1] - result.getHeight() < 16);
+            assertTrue(description + " grew", result.getWidth() <= size[0] && result.getHeight() <= size[1]);
+        } else {
+            assertEquals(description, size[0], result.getWidth());
+            assertEquals(description, size[1], result.getHeight());
+        }
+
+        // trimming only drops the far edges of the source, so the mapping uses the trimmed size
+        boolean transposing = LosslessJpegTransformer.isTransposing(orientation);
+        int sourceWidth = transposing ? result.getHeight() : result.getWidth();
+        int sourceHeight = transposing ? result.getWidth() : result.getHeight();
+        long total = 0;
+        int max = 0;
+        int count = 0;
+        for (int y = 0; y < result.getHeight(); y++) {
+            for (int x = 0; x < result.getWidth(); x++) {
+                int[] from = sourceOf(orientation, x, y, sourceWidth, sourceHeight);
+                int expected = source.getRGB(from[0], from[1]);
+                int actual = result.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs(((expected >> shift) & 0xff) - ((actual >> shift) & 0xff));
+                    total += difference;
+                    max = Math.max(max, difference);
+                    count++;
+                }
+            }
+        }
+        assertTrue(description + " mean difference " + (double) total / count, (double) total / count <= MAX_MEAN_DIFFERENCE);
+        assertTrue(description + " max difference " + max, max <= MAX_DIFFERENCE);
+
+        Metadata metadata = readMetadata(transformed);
+        assertEquals(description, 1, metadata.getFirstDirectoryOfType(ExifIFD0Directory.class).getInt(ExifIFD0Directory.TAG_ORIENTATION));
+        ExifSubIFDDirectory exif = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        assertEquals(description, result.getWidth(), exif.getInt(ExifSubIFDDirectory.TAG_EXIF_IMAGE_WIDTH));
+        assertEquals(description, result.getHeight(), exif.getInt(ExifSubIFDDirectory.TAG_EXIF_IMAGE_HEIGHT));
+    }
+
+    private static int[] transformedSize(int orientation, int width, int height) {
+        return LosslessJpegTransformer.isTransposing(orientation) ? new int[]{height, width} : new int[]{width, height};
+    }
+
+    /**
+     * The pixel of a width x height source that ends up at x, y once transformed.
+     */
+    private static int[] sourceOf(int orientation, int x, int y, int width, int height) {
+        switch (orientation) {
+            case 1:
+                return new int[]{x, y};
+            case 2:
+                return new int[]{width - 1 - x, y};
+            case 3:
+                return new int[]{width - 1 - x, height - 1 - y};
+            case 4:
+                return new int[]{x, height - 1 - y};
+            case 5:
+                return new int[]{y, x};
+            case 6:
+                return new int[]{y, height - 1 - x};
+            case 7:
+                return new int[]{width - 1 - y, height - 1 - x};
+            case 8:
+                return new int[]{width - 1 - y, x};
+            default:
+                throw new IllegalArgumentException("invalid orientation " + orientation);
+        }
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        if (image == null) {
+            fail("not a readable jpeg");
+        }
+        return image;
+    }
+
+    private static Metadata readMetadata(byte[] jpeg) throws Exception {
+        return ImageMetadataReader.readMetadata(new ByteArrayInputStream(jpeg), jpeg.length);
+    }
+
+    private byte[] readFixture(String name) throws IOException {
+        InputStream input = getClass().getResourceAsStream(name);
+        if (input == null) {
+            throw new IOException("missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+}
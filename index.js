@@ -47,12 +47,20 @@ function convertNativeProps(props) {
     newProps.captureTarget = Camera.constants.CaptureTarget[props.captureTarget];
   }
 
+  const hasBarCodesListener = Platform.OS === 'android' && typeof props.onBarCodesRead === 'function'
+
   // do not register barCodeTypes if no barcode listener
-  if (typeof props.onBarCodeRead !== 'function') {
+  if (typeof props.onBarCodeRead !== 'function' && !hasBarCodesListener) {
     newProps.barCodeTypes = [];
   }
 
-  newProps.barcodeScannerEnabled = typeof props.onBarCodeRead === 'function'
+  newProps.barcodeScannerEnabled = typeof props.onBarCodeRead === 'function' || hasBarCodesListener
+  newProps.barCodeMultiDecode = hasBarCodesListener
+
+  // only report scanner stats to a listener
+  if (Platform.OS !== 'android' || typeof props.onScannerStats !== 'function') {
+    newProps.barcodeScannerStatsInterval = 0;
+  }
 
   return newProps;
 }
@@ -97,12 +105,37 @@ export default class Camera extends Component {
     ]),
     keepAwake: PropTypes.bool,
     onBarCodeRead: PropTypes.func,
+    onBarCodesRead: PropTypes.func,
     barcodeScannerEnabled: PropTypes.bool,
+    barcodeScannerThreadPriority: PropTypes.number,
+    barcodeDecoderPoolSize: PropTypes.number,
+    barcodeScannerTargetLatency: PropTypes.number,
+    barcodeScannerMaxCpu: PropTypes.number,
+    barcodeScannerChangeThreshold: PropTypes.number,
+    barcodeScannerEscalationFrames: PropTypes.number,
+    barcodeScannerDecodeBudget: PropTypes.number,
+    barcodeScannerTracking: PropTypes.bool,
+    barcodeScannerFormatLearning: PropTypes.bool,
+    barcodeScannerPersistFormatLearning: PropTypes.bool,
+    barcodeScannerScanlines: PropTypes.number,
+    barcodeScannerRaceFormats: PropTypes.bool,
+    barcodeScannerAnalysisSize: PropTypes.number,
+    barcodeScannerStatsInterval: PropTypes.number,
+    onScannerStats: PropTypes.func,
+    barCodeResultTtl: PropTypes.number,
+    barCodeMinRepeat: PropTypes.number,
+    barCodeCooldown: PropTypes.number,
     onFocusChanged: PropTypes.func,
     onZoomChanged: PropTypes.func,
     mirrorImage: PropTypes.bool,
     fixOrientation: PropTypes.bool,
     barCodeTypes: PropTypes.array,
+    scanArea: PropTypes.shape({
+      x: PropTypes.number,
+      y: PropTypes.number,
+      width: PropTypes.number,
+      height: PropTypes.number
+    }),
     orientation: PropTypes.oneOfType([
       PropTypes.string,
       PropTypes.number
@@ -138,6 +171,7 @@ export default class Camera extends Component {
   static checkDeviceAuthorizationStatus = CameraManager.checkDeviceAuthorizationStatus;
   static checkVideoAuthorizationStatus = CameraManager.checkVideoAuthorizationStatus;
   static checkAudioAuthorizationStatus = CameraManager.checkAudioAuthorizationStatus;
+  static getScannerStats = CameraManager.getScannerStats;
 
   setNativeProps(props) {
     this.refs[CAMERA_REF].setNativeProps(props);
@@ -153,6 +187,7 @@ export default class Camera extends Component {
 
   async componentWillMount() {
     this._addOnBarCodeReadListener()
+    this._addOnScannerStatsListener()
 
     let { captureMode } = convertNativeProps({ captureMode: this.props.captureMode })
     let hasVideoAndAudio = this.props.captureAudio && captureMode === Camera.constants.CaptureMode.video
@@ -166,6 +201,7 @@ export default class Camera extends Component {
 
   componentWillUnmount() {
     this._removeOnBarCodeReadListener()
+    this._removeOnScannerStatsListener()
 
     if (this.state.isRecording) {
       this.stopCapture();
@@ -173,14 +209,17 @@ export default class Camera extends Component {
   }
 
   componentWillReceiveProps(newProps) {
-    const { onBarCodeRead } = this.props
-    if (onBarCodeRead !== newProps.onBarCodeRead) {
+    const { onBarCodeRead, onBarCodesRead } = this.props
+    if (onBarCodeRead !== newProps.onBarCodeRead || onBarCodesRead !== newProps.onBarCodesRead) {
       this._addOnBarCodeReadListener(newProps)
     }
+    if (this.props.onScannerStats !== newProps.onScannerStats) {
+      this._addOnScannerStatsListener(newProps)
+    }
   }
 
   _addOnBarCodeReadListener(props) {
-    const { onBarCodeRead } = props || this.props
+    const { onBarCodeRead, onBarCodesRead } = props || this.props
     this._removeOnBarCodeReadListener()
     if (onBarCodeRead) {
       this.cameraBarCodeReadListener = Platform.select({
@@ -188,12 +227,35 @@ export default class Camera extends Component {
         android: DeviceEventEmitter.addListener('CameraBarCodeReadAndroid',  this._onBarCodeRead)
       })
     }
+    if (onBarCodesRead && Platform.OS === 'android') {
+      this.cameraBarCodesReadListener = DeviceEventEmitter.addListener('CameraBarCodesReadAndroid', this._onBarCodesRead)
+    }
+  }
+
+  _addOnScannerStatsListener(props) {
+    const { onScannerStats } = props || this.props
+    this._removeOnScannerStatsListener()
+    if (onScannerStats && Platform.OS === 'android') {
+      this.cameraScannerStatsListener = DeviceEventEmitter.addListener('CameraScannerStatsAndroid', this._onScannerStats)
+    }
+  }
+  _removeOnScannerStatsListener() {
+    const listener = this.cameraScannerStatsListener
+    if (listener) {
+      listener.remove()
+      this.cameraScannerStatsListener = null
+    }
   }
   _removeOnBarCodeReadListener() {
     const listener = this.cameraBarCodeReadListener
     if (listener) {
       listener.remove()
     }
+    const barCodesListener = this.cameraBarCodesReadListener
+    if (barCodesListener) {
+      barCodesListener.remove()
+      this.cameraBarCodesReadListener = null
+    }
   }
 
   render() {
@@ -209,6 +271,18 @@ export default class Camera extends Component {
     }
   };
 
+  _onBarCodesRead = (data) => {
+    if (this.props.onBarCodesRead) {
+      this.props.onBarCodesRead(data)
+    }
+  };
+
+  _onScannerStats = (stats) => {
+    if (this.props.onScannerStats) {
+      this.props.onScannerStats(stats)
+    }
+  };
+
   capture(options) {
     const props = convertNativeProps(this.props);
     options = {
@@ -267,7 +341,8 @@ const RCTCamera = requireNativeComponent('RCTCamera', Camera, {nativeOnly: {
   importantForAccessibility: true,
   accessibilityLiveRegion: true,
   accessibilityComponentType: true,
-  onLayout: true
+  onLayout: true,
+  barCodeMultiDecode: true
 }});
 
 const styles = StyleSheet.create({